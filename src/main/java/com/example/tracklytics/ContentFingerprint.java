@@ -0,0 +1,36 @@
+package com.example.tracklytics;
+
+import java.util.Objects;
+
+// 64-bit FNV-1a over a row's mutable fields; equal fingerprints mean the catalog write can be skipped
+public final class ContentFingerprint {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ContentFingerprint() {}
+
+    public static long of(Object... fields) {
+        long hash = OFFSET_BASIS;
+        for (Object field : fields) {
+            if (field == null) {
+                // Distinct marker so null and "" (or "null") don't collide
+                hash = mix(hash, 0xff);
+            } else {
+                String value = Objects.toString(field);
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    hash = mix(hash, c & 0xff);
+                    hash = mix(hash, c >>> 8);
+                }
+            }
+            // Field separator, so ("ab", "c") and ("a", "bc") hash differently
+            hash = mix(hash, 0xfe);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int octet) {
+        return (hash ^ octet) * PRIME;
+    }
+}
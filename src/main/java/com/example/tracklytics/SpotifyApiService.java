@@ -1,167 +1,295 @@
 package com.example.tracklytics;
 
+import com.example.tracklytics.sync.UserSyncChanges;
+import com.example.tracklytics.user.TimeRange;
+import com.example.tracklytics.user.TopListChange;
+import com.example.tracklytics.user.TopListStore;
 import com.example.tracklytics.user.User;
+import com.example.tracklytics.user.UserDataChangedEvent;
 import com.example.tracklytics.user.UserService;
+import com.example.tracklytics.user.UserSummary;
 import com.example.tracklytics.artist.ArtistService;
 import com.example.tracklytics.track.TrackService;
 import com.example.tracklytics.artist.Artist;
 import com.example.tracklytics.track.Track;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import com.example.tracklytics.spotify.SpotifyArtist;
+import com.example.tracklytics.spotify.SpotifyClient;
+import com.example.tracklytics.spotify.SpotifyResponseDecoder;
+import com.example.tracklytics.spotify.SpotifyTrack;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 @Service
 public class SpotifyApiService {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final String TOP_ITEMS_URL = "https://api.spotify.com/v1/me/top/%s?time_range=%s&limit=%d&offset=%d";
+    // Largest limit /me/top accepts; longer lists are fetched as several offset pages
+    private static final int TOP_ITEMS_PAGE_SIZE = 50;
+
+    private final SpotifyClient spotifyClient;
+    private final SpotifyResponseDecoder responseDecoder;
     private final TrackService trackService;
     private final ArtistService artistService;
     private final UserService userService;
-
-    public SpotifyApiService(TrackService trackService, ArtistService artistService, UserService userService) {
+    private final TopListStore topListStore;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int maxTopItems;
+    private final Counter noopSyncCounter;
+    private final Map<String, Counter> topListCounters = new HashMap<>();
+
+    public SpotifyApiService(SpotifyClient spotifyClient, SpotifyResponseDecoder responseDecoder,
+                             TrackService trackService, ArtistService artistService, UserService userService,
+                             TopListStore topListStore, PlatformTransactionManager transactionManager,
+                             ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry,
+                             @Value("${spotify.top-items.max-items:50}") int maxTopItems) {
+        this.spotifyClient = spotifyClient;
+        this.responseDecoder = responseDecoder;
         this.trackService = trackService;
         this.artistService = artistService;
         this.userService = userService;
+        this.topListStore = topListStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.maxTopItems = Math.max(1, maxTopItems);
+
+        this.noopSyncCounter = Counter.builder("tracklytics.sync.noop")
+                .description("User syncs where every top list matched the last response and only lastSyncTime was written")
+                .register(meterRegistry);
+        for (String itemType : List.of(TopListStore.TRACKS, TopListStore.ARTISTS)) {
+            for (TimeRange range : TimeRange.values()) {
+                for (String outcome : List.of("changed", "unchanged")) {
+                    topListCounters.put(TopListStore.key(itemType, range) + ":" + outcome, Counter.builder("tracklytics.sync.lists")
+                            .description("Top-list responses compared against the stored fingerprint")
+                            .tag("type", itemType)
+                            .tag("range", range.apiValue())
+                            .tag("outcome", outcome)
+                            .register(meterRegistry));
+                }
+            }
+        }
     }
 
-    @Transactional
-    public void fetchAndSaveUserTopTracks(User user) {
-        String url = "https://api.spotify.com/v1/me/top/tracks?limit=50";
+    public UserSyncChanges syncUser(User user) {
+        return syncUser(UserSummary.from(user));
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(user.getAccessToken());
-        HttpEntity<String> entity = new HttpEntity<>(headers);
+    // Fetches top tracks and artists for every time range concurrently (the shared rate limiter paces them),
+    // then writes only the lists whose fingerprint changed, in one short transaction
+    public UserSyncChanges syncUser(UserSummary user) {
+        Map<TimeRange, CompletableFuture<List<SpotifyTrack>>> trackRequests = new EnumMap<>(TimeRange.class);
+        Map<TimeRange, CompletableFuture<List<SpotifyArtist>>> artistRequests = new EnumMap<>(TimeRange.class);
+        for (TimeRange range : TimeRange.values()) {
+            trackRequests.put(range, fetchTopList(user.accessToken(), "tracks", range,
+                    responseDecoder::decodeTopTracks, SpotifyTrack::id));
+            artistRequests.put(range, fetchTopList(user.accessToken(), "artists", range,
+                    responseDecoder::decodeTopArtists, SpotifyArtist::id));
+        }
+        Map<TimeRange, List<SpotifyTrack>> tracks = joinAll(trackRequests);
+        Map<TimeRange, List<SpotifyArtist>> artists = joinAll(artistRequests);
+
+        Map<String, Long> storedFingerprints = topListStore.fingerprints(user.id());
+        Map<TimeRange, Long> changedTracks =
+                changedLists(TopListStore.TRACKS, tracks, storedFingerprints, SpotifyApiService::fingerprintTracks);
+        Map<TimeRange, Long> changedArtists =
+                changedLists(TopListStore.ARTISTS, artists, storedFingerprints, SpotifyApiService::fingerprintArtists);
+
+        Instant syncTime = Instant.now();
+        UserSyncChanges changes;
+        if (changedTracks.isEmpty() && changedArtists.isEmpty()) {
+            // Same lists as last time: no catalog upsert, no join-table diff, just the sync timestamp.
+            // No event either, so cached views and principals stay warm; the data they hold is still current.
+            userService.markSynced(user.id(), syncTime);
+            noopSyncCounter.increment();
+            changes = UserSyncChanges.NONE;
+        } else {
+            changes = transactionTemplate.execute(status ->
+                    writeChangedLists(user, tracks, artists, changedTracks, changedArtists, syncTime));
+            // Published after commit so listeners reload the new state, not the old one
+            eventPublisher.publishEvent(new UserDataChangedEvent(user.spotifyId()));
+        }
 
-        try {
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
-
-            if (responseBody != null && responseBody.containsKey("items")) {
-                List<Map<String, Object>> tracks = (List<Map<String, Object>>) responseBody.get("items");
-
-                // Build new track set
-                Set<Track> newTopTracks = new HashSet<>();
-                for (Map<String, Object> trackData : tracks) {
-                    Track track = saveTrackFromSpotifyData(trackData);
-                    if (track != null) {
-                        newTopTracks.add(track);
-                    }
-                }
+        System.out.println("Synced top lists for user: " + user.displayName() + " - " +
+                changedTracks.size() + "/" + tracks.size() + " track lists and " +
+                changedArtists.size() + "/" + artists.size() + " artist lists changed (" + changes + ")");
+        return changes;
+    }
+
+    // Catalog upserts and user_top_lists rows for every changed list; the medium-term list is also mirrored into
+    // the join tables, and only that diff is reported back (it is what the insights and genre queries read)
+    private UserSyncChanges writeChangedLists(UserSummary user,
+                                              Map<TimeRange, List<SpotifyTrack>> tracks,
+                                              Map<TimeRange, List<SpotifyArtist>> artists,
+                                              Map<TimeRange, Long> changedTracks,
+                                              Map<TimeRange, Long> changedArtists,
+                                              Instant syncTime) {
+        Map<TimeRange, Integer[]> trackIds = saveChangedLists(user.id(), TopListStore.TRACKS, tracks, changedTracks,
+                this::trackFromSpotifyData, SpotifyTrack::id, trackService::upsertAllBySpotifyId);
+        Map<TimeRange, Integer[]> artistIds = saveChangedLists(user.id(), TopListStore.ARTISTS, artists, changedArtists,
+                this::artistFromSpotifyData, SpotifyArtist::id, artistService::upsertAllBySpotifyId);
+
+        Integer[] mediumTrackIds = trackIds.get(TimeRange.MEDIUM_TERM);
+        Integer[] mediumArtistIds = artistIds.get(TimeRange.MEDIUM_TERM);
+        if (mediumTrackIds == null && mediumArtistIds == null) {
+            userService.markSynced(user.id(), syncTime);
+            return UserSyncChanges.NONE;
+        }
+
+        // Work on the managed row so the collection diff runs against what is actually in the join tables
+        User managedUser = userService.findWithTopListsById(user.id())
+                .orElseThrow(() -> new IllegalStateException("User no longer exists: " + user.spotifyId()));
+        TopListChange trackChange = mediumTrackIds != null
+                ? managedUser.updateTopTracks(trackService.referencesTo(mediumTrackIds))
+                : TopListChange.NONE;
+        TopListChange artistChange = mediumArtistIds != null
+                ? managedUser.updateTopArtists(artistService.referencesTo(mediumArtistIds))
+                : TopListChange.NONE;
+        managedUser.setLastSyncTime(syncTime);
+        return new UserSyncChanges(trackChange, artistChange);
+    }
 
-                // Update user's tracks and save
-                user.updateTopTracks(newTopTracks);
-                user.setLastSyncTime(Instant.now());
-                userService.saveUser(user);
+    // One catalog upsert across all changed ranges (the upsert dedupes), then each list's ids in rank order
+    private <S, E> Map<TimeRange, Integer[]> saveChangedLists(Integer userId, String itemType,
+                                                            Map<TimeRange, List<S>> lists,
+                                                            Map<TimeRange, Long> changed,
+                                                            Function<S, E> toEntity,
+                                                            Function<S, String> spotifyIdOf,
+                                                            Function<List<E>, Map<String, Integer>> upsert) {
+        Map<TimeRange, Integer[]> idsByRange = new EnumMap<>(TimeRange.class);
+        if (changed.isEmpty()) {
+            return idsByRange;
+        }
 
-                System.out.println("Saved " + tracks.size() + " tracks for user: " + user.getDisplayName());
+        List<E> catalog = new ArrayList<>();
+        for (TimeRange range : changed.keySet()) {
+            for (S item : lists.get(range)) {
+                catalog.add(toEntity.apply(item));
             }
-        } catch (Exception e) {
-            System.err.println("Error fetching top tracks: " + e.getMessage());
-            throw new RuntimeException("Failed to fetch top tracks", e);
         }
+        Map<String, Integer> ids = upsert.apply(catalog);
+
+        changed.forEach((range, fingerprint) -> {
+            Integer[] rankedIds = lists.get(range).stream().map(item -> ids.get(spotifyIdOf.apply(item))).toArray(Integer[]::new);
+            topListStore.save(userId, itemType, range, fingerprint, rankedIds);
+            idsByRange.put(range, rankedIds);
+        });
+        return idsByRange;
     }
 
-    @Transactional
-    public void fetchAndSaveUserTopArtists(User user) {
-        String url = "https://api.spotify.com/v1/me/top/artists?limit=50";
+    // Lists Spotify sent no items for are left alone, same as unchanged ones
+    private <T> Map<TimeRange, Long> changedLists(String itemType, Map<TimeRange, List<T>> lists,
+                                                  Map<String, Long> storedFingerprints,
+                                                  ToLongFunction<List<T>> fingerprint) {
+        Map<TimeRange, Long> changed = new EnumMap<>(TimeRange.class);
+        lists.forEach((range, items) -> {
+            if (items == null) {
+                return;
+            }
+            long current = fingerprint.applyAsLong(items);
+            boolean isChanged = !Objects.equals(storedFingerprints.get(TopListStore.key(itemType, range)), current);
+            topListCounters.get(TopListStore.key(itemType, range) + (isChanged ? ":changed" : ":unchanged")).increment();
+            if (isChanged) {
+                changed.put(range, current);
+            }
+        });
+        return changed;
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(user.getAccessToken());
-        HttpEntity<String> entity = new HttpEntity<>(headers);
+    // Order matters: a reshuffled top list is a change
+    private static long fingerprintTracks(List<SpotifyTrack> tracks) {
+        List<Object> fields = new ArrayList<>(tracks.size() * 5);
+        for (SpotifyTrack track : tracks) {
+            Collections.addAll(fields, track.id(), track.name(), track.albumName(), track.durationMs(), track.popularity());
+        }
+        return ContentFingerprint.of(fields.toArray());
+    }
 
-        try {
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
-
-            if (responseBody != null && responseBody.containsKey("items")) {
-                List<Map<String, Object>> artists = (List<Map<String, Object>>) responseBody.get("items");
-
-                // Build new artist set
-                Set<Artist> newTopArtists = new HashSet<>();
-                for (Map<String, Object> artistData : artists) {
-                    Artist artist = saveArtistFromSpotifyData(artistData);
-                    if (artist != null) {
-                        newTopArtists.add(artist);
-                    }
-                }
+    private static long fingerprintArtists(List<SpotifyArtist> artists) {
+        List<Object> fields = new ArrayList<>(artists.size() * 4);
+        for (SpotifyArtist artist : artists) {
+            String genres = artist.genres() != null ? String.join(",", artist.genres()) : null;
+            Collections.addAll(fields, artist.id(), artist.name(), artist.popularity(), genres);
+        }
+        return ContentFingerprint.of(fields.toArray());
+    }
 
-                // Update user's artists and save
-                user.updateTopArtists(newTopArtists);
-                user.setLastSyncTime(Instant.now());
-                userService.saveUser(user);
+    // Requests every offset page of one list at once; completes with null if Spotify sent no items at all
+    private <T> CompletableFuture<List<T>> fetchTopList(String accessToken, String type, TimeRange range,
+                                                        Function<byte[], List<T>> decoder, Function<T, String> idOf) {
+        List<CompletableFuture<List<T>>> pages = new ArrayList<>();
+        for (int offset = 0; offset < maxTopItems; offset += TOP_ITEMS_PAGE_SIZE) {
+            int limit = Math.min(TOP_ITEMS_PAGE_SIZE, maxTopItems - offset);
+            String url = TOP_ITEMS_URL.formatted(type, range.apiValue(), limit, offset);
+            pages.add(fetchTopItems(accessToken, url, type + " (" + range.apiValue() + ")", decoder));
+        }
 
-                System.out.println("Saved " + artists.size() + " artists for user: " + user.getDisplayName());
+        return CompletableFuture.allOf(pages.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            if (pages.get(0).join() == null) {
+                return null;
             }
-        } catch (Exception e) {
-            System.err.println("Error fetching top artists: " + e.getMessage());
-            throw new RuntimeException("Failed to fetch top artists", e);
-        }
+            // Pages are separate requests, so an item can slide across a page boundary between them
+            Map<String, T> byId = new LinkedHashMap<>();
+            for (CompletableFuture<List<T>> page : pages) {
+                List<T> items = page.join();
+                if (items != null) {
+                    items.forEach(item -> byId.putIfAbsent(idOf.apply(item), item));
+                }
+            }
+            return new ArrayList<>(byId.values());
+        });
     }
 
-    private Track saveTrackFromSpotifyData(Map<String, Object> trackData) {
-        String spotifyId = (String) trackData.get("id");
-        String name = (String) trackData.get("name");
-        Integer durationMs = (Integer) trackData.get("duration_ms");
-        Integer popularity = (Integer) trackData.get("popularity");
-
-        // Get album info
-        Map<String, Object> album = (Map<String, Object>) trackData.get("album");
-        String albumName = album != null ? (String) album.get("name") : null;
-
-        // Check if track already exists, if not create it
-        Optional<Track> existingTrack = trackService.findBySpotifyId(spotifyId);
-
-        Track track;
-        if (existingTrack.isPresent()) {
-            track = existingTrack.get();
-            // Update with latest info
-            track.setName(name);
-            track.setAlbumName(albumName);
-            track.setDurationMs(durationMs);
-            track.setPopularity(popularity);
-        } else {
-            track = new Track(spotifyId, name, albumName);
-            track.setDurationMs(durationMs);
-            track.setPopularity(popularity);
+    private static <T> Map<TimeRange, List<T>> joinAll(Map<TimeRange, CompletableFuture<List<T>>> requests) {
+        Map<TimeRange, List<T>> results = new EnumMap<>(TimeRange.class);
+        try {
+            // EnumMap keeps null values: null means Spotify sent no items for that range
+            requests.forEach((range, request) -> results.put(range, request.join()));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
         }
+        return results;
+    }
 
-        return trackService.saveTrack(track);
+    // Completes with the decoded "items", or null if Spotify sent none
+    private <T> CompletableFuture<List<T>> fetchTopItems(String accessToken, String url, String type,
+                                                         Function<byte[], List<T>> decoder) {
+        return spotifyClient.get(url, accessToken)
+                .thenApply(decoder)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Error fetching top " + type + ": " + cause.getMessage());
+                    throw new RuntimeException("Failed to fetch top " + type, cause);
+                });
     }
 
-    private Artist saveArtistFromSpotifyData(Map<String, Object> artistData) {
-        String spotifyId = (String) artistData.get("id");
-        String name = (String) artistData.get("name");
-        Integer popularity = (Integer) artistData.get("popularity");
+    private Track trackFromSpotifyData(SpotifyTrack trackData) {
+        Track track = new Track(trackData.id(), trackData.name(), trackData.albumName());
+        track.setDurationMs(trackData.durationMs());
+        track.setPopularity(trackData.popularity());
+        return track;
+    }
 
+    private Artist artistFromSpotifyData(SpotifyArtist artistData) {
         // Get genres
-        List<String> genreList = (List<String>) artistData.get("genres");
-        String genres = genreList != null ? String.join(",", genreList) : null;
-
-        // Check if artist already exists, if not create it
-        Optional<Artist> existingArtist = artistService.findBySpotifyId(spotifyId);
-
-        Artist artist;
-        if (existingArtist.isPresent()) {
-            artist = existingArtist.get();
-            // Update with latest info
-            artist.setName(name);
-            artist.setPopularity(popularity);
-            artist.setGenres(genres);
-        } else {
-            artist = new Artist(spotifyId, name);
-            artist.setPopularity(popularity);
-            artist.setGenres(genres);
-        }
+        String genres = artistData.genres() != null ? String.join(",", artistData.genres()) : null;
 
-        return artistService.saveArtist(artist);
+        Artist artist = new Artist(artistData.id(), artistData.name());
+        artist.setPopularity(artistData.popularity());
+        artist.setGenres(genres);
+        return artist;
     }
 
     public void fetchAndSaveTrackAudioFeatures(User user) {
@@ -179,13 +307,9 @@ public class SpotifyApiService {
         String testTrackId = trackIds.get(0);
         String url = "https://api.spotify.com/v1/audio-features/" + testTrackId;
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(user.getAccessToken());
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
         try {
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
-            System.out.println("Audio features response: " + response.getBody());
+            byte[] body = spotifyClient.get(url, user.getAccessToken()).join();
+            System.out.println("Audio features response: " + responseDecoder.decodeAudioFeatures(body));
         } catch (Exception e) {
             System.err.println("Error fetching audio features: " + e.getMessage());
         }
@@ -1,8 +1,11 @@
 package com.example.tracklytics;
 
+import com.example.tracklytics.authentication.AuthenticatedUser;
 import com.example.tracklytics.insights.MusicInsightsService;
 import com.example.tracklytics.insights.MusicPersonality;
 import com.example.tracklytics.insights.PersonalityHistory;
+import com.example.tracklytics.sync.UserSyncChanges;
+import com.example.tracklytics.user.TimeRange;
 import com.example.tracklytics.user.User;
 import com.example.tracklytics.user.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,7 +13,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.core.user.OAuth2User;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.Instant;
@@ -29,6 +31,9 @@ public class SpotifyController {
     @Autowired
     private MusicInsightsService musicInsightsService;
 
+    @Autowired
+    private UserViewService userViewService;
+
     @GetMapping("/")
     public String home() {
         return "<h1>Welcome to Tracklytics</h1>" +
@@ -183,7 +188,6 @@ public class SpotifyController {
     }
 
     @GetMapping("/sync")
-    @Transactional
     public String syncUserData(@AuthenticationPrincipal OAuth2User principal) {
         if (principal == null) {
             return "Not authenticated - <a href='/oauth2/authorization/spotify'>Login with Spotify</a>";
@@ -203,8 +207,7 @@ public class SpotifyController {
             }
 
             try {
-                spotifyApiService.fetchAndSaveUserTopTracks(user);
-                spotifyApiService.fetchAndSaveUserTopArtists(user);
+                spotifyApiService.syncUser(user);
                 return "<h2>✅ Data Sync Complete!</h2>" +
                         "<p>Successfully synced your top tracks and artists from Spotify.</p>" +
                         "<p><a href='/me'>Back to Profile</a> | <a href='/'>Home</a></p>";
@@ -233,15 +236,14 @@ public class SpotifyController {
         }
 
         User user = userOpt.get();
+        MusicPersonality personality = userViewService.getPersonality(spotifyId, user.getLastSyncTime(), TimeRange.MEDIUM_TERM);
 
-        if (user.getTopArtists().isEmpty()) {
+        if (personality == null) {
             return "<h2>No Music Data</h2>" +
                     "<p>You need to sync your Spotify data first to see your music personality!</p>" +
                     "<p><a href='/sync'>Sync My Data</a></p>";
         }
 
-        MusicPersonality personality = musicInsightsService.analyzeMusicPersonality(user);
-
         return String.format(
                 "<div style='max-width: 1200px; margin: 0 auto; font-family: Arial, sans-serif; text-align: center;'>" +
                         "<h1>🎵 Your Music Personality</h1>" +
@@ -299,12 +301,14 @@ public class SpotifyController {
         }
 
         User user = userOpt.get();
+        MusicPersonality personality = userViewService.getPersonality(spotifyId, user.getLastSyncTime(), TimeRange.MEDIUM_TERM);
 
-        if (user.getTopArtists().isEmpty()) {
+        if (personality == null) {
             return "No data - <a href='/sync'>Sync first</a>";
         }
 
-        MusicPersonality personality = musicInsightsService.analyzeMusicPersonalityAndSaveHistory(user);
+        // The analysis may come from cache, but every card view is still recorded in the history
+        musicInsightsService.saveHistory(user, personality);
 
         return String.format(
                 "<div style='max-width: 500px; margin: 50px auto; font-family: Arial, sans-serif; background: linear-gradient(135deg, #2c2c2c 0%%, #1a1a1a 100%%); border-radius: 20px; padding: 40px; color: white; text-align: center; box-shadow: 0 10px 30px rgba(0,0,0,0.3);'>" +
@@ -458,18 +462,16 @@ public class SpotifyController {
     @GetMapping("/api/auth/me")
     @ResponseBody
     public ResponseEntity<?> getCurrentUser(Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser principal)) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        User user = (User) authentication.getPrincipal();
-
         Map<String, Object> response = new HashMap<>();
-        response.put("spotifyId", user.getSpotifyId());
-        response.put("displayName", user.getDisplayName());
-        response.put("email", user.getEmail());
-        response.put("hasData", !user.getTopTracks().isEmpty() || !user.getTopArtists().isEmpty());
-        response.put("lastSync", user.getLastSyncTime());
+        response.put("spotifyId", principal.spotifyId());
+        response.put("displayName", principal.displayName());
+        response.put("email", principal.email());
+        response.put("hasData", userService.hasTopItems(principal.id()));
+        response.put("lastSync", principal.lastSyncTime());
 
         return ResponseEntity.ok(response);
     }
@@ -574,22 +576,31 @@ public class SpotifyController {
 
     @GetMapping("/api/personality")
     @ResponseBody
-    public ResponseEntity<?> getPersonalityJson(Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+    public ResponseEntity<?> getPersonalityJson(Authentication authentication,
+                                       @RequestParam(value = "range", required = false) String range) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser principal)) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        User user = (User) authentication.getPrincipal();
+        TimeRange timeRange;
+        try {
+            timeRange = TimeRange.fromParam(range);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", e.getMessage(),
+                    "message", "range must be short_term, medium_term or long_term"
+            ));
+        }
+
+        MusicPersonality personality = userViewService.getPersonality(principal.spotifyId(), principal.lastSyncTime(), timeRange);
 
-        if (user.getTopArtists().isEmpty()) {
+        if (personality == null) {
             return ResponseEntity.badRequest().body(Map.of(
                     "error", "No music data available",
                     "message", "Please sync your Spotify data first"
             ));
         }
 
-        MusicPersonality personality = musicInsightsService.analyzeMusicPersonality(user);
-
         Map<String, Object> response = new HashMap<>();
         response.put("primaryPersonality", personality.getPrimaryPersonality());
         response.put("description", personality.getDescription());
@@ -598,6 +609,7 @@ public class SpotifyController {
         response.put("listeningMood", personality.getListeningMood());
         response.put("artistLoyalty", personality.getArtistLoyalty());
         response.put("trackLengthPreference", personality.getTrackLengthPreference());
+        response.put("timeRange", timeRange.apiValue());
         response.put("analyzedAt", Instant.now().toString());
 
         return ResponseEntity.ok(response);
@@ -606,12 +618,11 @@ public class SpotifyController {
     @GetMapping("/api/personality/history")
     @ResponseBody
     public ResponseEntity<?> getPersonalityHistoryJson(Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser principal)) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        User user = (User) authentication.getPrincipal();
-        List<PersonalityHistory> history = musicInsightsService.getPersonalityHistory(user);
+        List<PersonalityHistory> history = musicInsightsService.getPersonalityHistory(principal.id());
 
         if (history.isEmpty()) {
             return ResponseEntity.ok(Map.of(
@@ -645,11 +656,17 @@ public class SpotifyController {
     @PostMapping("/api/sync")
     @ResponseBody
     public ResponseEntity<?> syncMusicDataJson(Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser principal)) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        User user = (User) authentication.getPrincipal();
+        // Syncing needs the stored Spotify access token, which the cached principal doesn't carry
+        Optional<User> userOpt = userService.findBySpotifyId(principal.spotifyId());
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        User user = userOpt.get();
 
         // Check if token is expired
         if (user.getTokenExpiry() != null && user.getTokenExpiry().isBefore(Instant.now())) {
@@ -660,19 +677,22 @@ public class SpotifyController {
         }
 
         try {
-            spotifyApiService.fetchAndSaveUserTopTracks(user);
-            spotifyApiService.fetchAndSaveUserTopArtists(user);
+            UserSyncChanges changes = spotifyApiService.syncUser(user);
 
             // Get updated user data
-            User updatedUser = userService.findBySpotifyId(user.getSpotifyId()).orElse(user);
-
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "message", "Successfully synced your music data",
-                    "tracksCount", updatedUser.getTopTracks().size(),
-                    "artistsCount", updatedUser.getTopArtists().size(),
-                    "lastSync", updatedUser.getLastSyncTime() != null ? updatedUser.getLastSyncTime().toString() : null
-            ));
+            User updatedUser = userService.findWithTopListsBySpotifyId(user.getSpotifyId()).orElse(user);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("success", true);
+            response.put("message", "Successfully synced your music data");
+            response.put("tracksCount", updatedUser.getTopTracks().size());
+            response.put("artistsCount", updatedUser.getTopArtists().size());
+            response.put("tracksAdded", changes.tracks().added());
+            response.put("tracksRemoved", changes.tracks().removed());
+            response.put("artistsAdded", changes.artists().added());
+            response.put("artistsRemoved", changes.artists().removed());
+            response.put("lastSync", updatedUser.getLastSyncTime() != null ? updatedUser.getLastSyncTime().toString() : null);
+            return ResponseEntity.ok(response);
 
         } catch (Exception e) {
             System.err.println("Error during sync: " + e.getMessage());
@@ -685,56 +705,55 @@ public class SpotifyController {
 
     @GetMapping("/api/tracks")
     @ResponseBody
-    public ResponseEntity<?> getTopTracksJson(Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+    public ResponseEntity<?> getTopTracksJson(Authentication authentication,
+                                       @RequestParam(value = "range", required = false) String range) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser principal)) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        User user = (User) authentication.getPrincipal();
-
-        List<Map<String, Object>> tracks = user.getTopTracks().stream()
-                .map(track -> {
-                    Map<String, Object> trackMap = new HashMap<>();
-                    trackMap.put("id", track.getId());
-                    trackMap.put("spotifyId", track.getSpotifyId());
-                    trackMap.put("name", track.getName());
-                    trackMap.put("albumName", track.getAlbumName());
-                    trackMap.put("durationMs", track.getDurationMs());
-                    trackMap.put("popularity", track.getPopularity());
-                    return trackMap;
-                })
-                .collect(Collectors.toList());
+        TimeRange timeRange;
+        try {
+            timeRange = TimeRange.fromParam(range);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", e.getMessage(),
+                    "message", "range must be short_term, medium_term or long_term"
+            ));
+        }
+
+        List<Map<String, Object>> tracks = userViewService.getTopTracks(principal.spotifyId(), principal.lastSyncTime(), timeRange);
 
         return ResponseEntity.ok(Map.of(
                 "tracks", tracks,
-                "totalTracks", tracks.size()
+                "totalTracks", tracks.size(),
+                "timeRange", timeRange.apiValue()
         ));
     }
 
     @GetMapping("/api/artists")
     @ResponseBody
-    public ResponseEntity<?> getTopArtistsJson(Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+    public ResponseEntity<?> getTopArtistsJson(Authentication authentication,
+                                       @RequestParam(value = "range", required = false) String range) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser principal)) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        User user = (User) authentication.getPrincipal();
-
-        List<Map<String, Object>> artists = user.getTopArtists().stream()
-                .map(artist -> {
-                    Map<String, Object> artistMap = new HashMap<>();
-                    artistMap.put("id", artist.getId());
-                    artistMap.put("spotifyId", artist.getSpotifyId());
-                    artistMap.put("name", artist.getName());
-                    artistMap.put("popularity", artist.getPopularity());
-                    artistMap.put("genres", artist.getGenres());
-                    return artistMap;
-                })
-                .collect(Collectors.toList());
+        TimeRange timeRange;
+        try {
+            timeRange = TimeRange.fromParam(range);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", e.getMessage(),
+                    "message", "range must be short_term, medium_term or long_term"
+            ));
+        }
+
+        List<Map<String, Object>> artists = userViewService.getTopArtists(principal.spotifyId(), principal.lastSyncTime(), timeRange);
 
         return ResponseEntity.ok(Map.of(
                 "artists", artists,
-                "totalArtists", artists.size()
+                "totalArtists", artists.size(),
+                "timeRange", timeRange.apiValue()
         ));
     }
 
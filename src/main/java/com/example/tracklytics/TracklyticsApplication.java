@@ -2,12 +2,14 @@ package com.example.tracklytics;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 
 @SpringBootApplication
 @EnableScheduling
+@EnableCaching
 public class TracklyticsApplication {
 
     public static void main(String[] args) {
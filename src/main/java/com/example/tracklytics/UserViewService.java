@@ -0,0 +1,115 @@
+package com.example.tracklytics;
+
+import com.example.tracklytics.artist.Artist;
+import com.example.tracklytics.artist.ArtistService;
+import com.example.tracklytics.insights.MusicInsightsService;
+import com.example.tracklytics.insights.MusicPersonality;
+import com.example.tracklytics.track.Track;
+import com.example.tracklytics.track.TrackService;
+import com.example.tracklytics.user.TimeRange;
+import com.example.tracklytics.user.UserService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+
+// Read-side views that only change when a sync runs. Keys include lastSyncTime, so a newer sync never
+// reads a stale entry; superseded entries are left to the caches' size and TTL eviction.
+@Service
+public class UserViewService {
+
+    static final String PERSONALITY = "personality";
+    static final String TOP_TRACKS = "top-tracks";
+    static final String TOP_ARTISTS = "top-artists";
+
+    private final UserService userService;
+    private final TrackService trackService;
+    private final ArtistService artistService;
+    private final MusicInsightsService musicInsightsService;
+    private final CacheManager cacheManager;
+
+    public UserViewService(UserService userService, TrackService trackService, ArtistService artistService,
+                           MusicInsightsService musicInsightsService, CacheManager cacheManager,
+                           MeterRegistry meterRegistry) {
+        this.userService = userService;
+        this.trackService = trackService;
+        this.artistService = artistService;
+        this.musicInsightsService = musicInsightsService;
+        this.cacheManager = cacheManager;
+
+        // cache.gets{result} is published by Spring Boot; the ratio is what dashboards actually want
+        for (String name : List.of(PERSONALITY, TOP_TRACKS, TOP_ARTISTS)) {
+            Gauge.builder("tracklytics.view.cache.hit.ratio", () -> nativeCache(name).stats().hitRate())
+                    .description("Share of view lookups answered from cache")
+                    .tag("cache", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    // Null when the user doesn't exist or has no top artists yet. Medium term reads the join tables,
+    // the other ranges their ranked user_top_lists rows.
+    @Cacheable(cacheNames = PERSONALITY, key = "#spotifyId + '@' + #lastSyncTime + '/' + #range")
+    public MusicPersonality getPersonality(String spotifyId, Instant lastSyncTime, TimeRange range) {
+        if (range != TimeRange.MEDIUM_TERM) {
+            List<Artist> artists = artistService.findTopForUser(spotifyId, range);
+            return artists.isEmpty() ? null
+                    : musicInsightsService.analyzeMusicPersonality(trackService.findTopForUser(spotifyId, range), artists);
+        }
+        return userService.findWithTopListsBySpotifyId(spotifyId)
+                .filter(user -> !user.getTopArtists().isEmpty())
+                .map(musicInsightsService::analyzeMusicPersonality)
+                .orElse(null);
+    }
+
+    @Cacheable(cacheNames = TOP_TRACKS, key = "#spotifyId + '@' + #lastSyncTime + '/' + #range")
+    public List<Map<String, Object>> getTopTracks(String spotifyId, Instant lastSyncTime, TimeRange range) {
+        if (range != TimeRange.MEDIUM_TERM) {
+            return trackService.findTopForUser(spotifyId, range).stream().map(UserViewService::trackView).toList();
+        }
+        return userService.findWithTopTracksBySpotifyId(spotifyId)
+                .map(user -> user.getTopTracks().stream().map(UserViewService::trackView).toList())
+                .orElse(List.of());
+    }
+
+    @Cacheable(cacheNames = TOP_ARTISTS, key = "#spotifyId + '@' + #lastSyncTime + '/' + #range")
+    public List<Map<String, Object>> getTopArtists(String spotifyId, Instant lastSyncTime, TimeRange range) {
+        if (range != TimeRange.MEDIUM_TERM) {
+            return artistService.findTopForUser(spotifyId, range).stream().map(UserViewService::artistView).toList();
+        }
+        return userService.findWithTopArtistsBySpotifyId(spotifyId)
+                .map(user -> user.getTopArtists().stream().map(UserViewService::artistView).toList())
+                .orElse(List.of());
+    }
+
+    private static Map<String, Object> trackView(Track track) {
+        Map<String, Object> trackMap = new HashMap<>();
+        trackMap.put("id", track.getId());
+        trackMap.put("spotifyId", track.getSpotifyId());
+        trackMap.put("name", track.getName());
+        trackMap.put("albumName", track.getAlbumName());
+        trackMap.put("durationMs", track.getDurationMs());
+        trackMap.put("popularity", track.getPopularity());
+        return Collections.unmodifiableMap(trackMap);
+    }
+
+    private static Map<String, Object> artistView(Artist artist) {
+        Map<String, Object> artistMap = new HashMap<>();
+        artistMap.put("id", artist.getId());
+        artistMap.put("spotifyId", artist.getSpotifyId());
+        artistMap.put("name", artist.getName());
+        artistMap.put("popularity", artist.getPopularity());
+        artistMap.put("genres", artist.getGenres());
+        return Collections.unmodifiableMap(artistMap);
+    }
+
+    @SuppressWarnings("unchecked")
+    private com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache(String name) {
+        Cache cache = Objects.requireNonNull(cacheManager.getCache(name), "Cache not configured: " + name);
+        return (com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache.getNativeCache();
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.tracklytics.artist;
 
 import com.example.tracklytics.track.Track;
+import com.example.tracklytics.ContentFingerprint;
+import com.example.tracklytics.insights.GenreDictionary;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.util.HashSet;
 import java.util.Set;
@@ -9,8 +12,13 @@ import java.util.Set;
 @Table(name = "artists")
 public class Artist {
 
+    // Ids are handed out in blocks of this size; native upserts claim whole blocks too
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Pooled sequence (not IDENTITY) so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "artists_seq")
+    @SequenceGenerator(name = "artists_seq", sequenceName = "artists_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Integer id;
 
     @Column(nullable = false, unique = true)
@@ -22,6 +30,13 @@ public class Artist {
     private Integer popularity;
     private String genres;
 
+    // genres parsed into GenreDictionary ids on first use; reset whenever genres changes
+    @Transient
+    private int[] genreIds;
+
+    // ContentFingerprint of the mutable columns; the upsert skips the UPDATE when it hasn't changed
+    private Long fingerprint;
+
     @ManyToMany
     @JoinTable(
             name = "track_artists",
@@ -37,6 +52,16 @@ public class Artist {
         this.name = name;
     }
 
+    public long computeFingerprint() {
+        return ContentFingerprint.of(name, popularity, genres);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void refreshFingerprint() {
+        this.fingerprint = computeFingerprint();
+    }
+
     // Getters and Setters
     public Integer getId() {
         return id;
@@ -72,6 +97,17 @@ public class Artist {
 
     public void setGenres(String genres) {
         this.genres = genres;
+        this.genreIds = null;
+    }
+
+    @JsonIgnore
+    public int[] getGenreIds() {
+        int[] ids = genreIds;
+        if (ids == null) {
+            ids = GenreDictionary.global().parse(genres);
+            genreIds = ids;
+        }
+        return ids;
     }
 
     public Set<Track> getTracks() {
@@ -81,4 +117,8 @@ public class Artist {
     public void setTracks(Set<Track> tracks) {
         this.tracks = tracks;
     }
+
+    public Long getFingerprint() {
+        return fingerprint;
+    }
 }
@@ -7,6 +7,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -20,4 +21,9 @@ public class ArtistController {
     public Optional<Artist> findBySpotifyId(@PathVariable String spotifyId) {
         return artistService.findBySpotifyId(spotifyId);
     }
+
+    @GetMapping("/genre/{genre}")
+    public List<Artist> findByGenre(@PathVariable String genre) {
+        return artistService.findByGenre(genre);
+    }
 }
@@ -1,16 +1,36 @@
 package com.example.tracklytics.artist;
 
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
 
-public interface ArtistRepository extends JpaRepository<Artist, Integer> {
+public interface ArtistRepository extends JpaRepository<Artist, Integer>, ArtistUpsertRepository {
 
     Optional<Artist> findBySpotifyId(String spotifyId);
 
     List<Artist> findByPopularityGreaterThan(Integer popularity);
 
-    List<Artist> findByGenresContaining(String genre);
+    // Exact genre match through genres.name (unique) and the artist_genres primary key
+    @Query(value = """
+            SELECT a.* FROM artists a
+            JOIN artist_genres ag ON ag.artist_id = a.id
+            JOIN genres g ON g.id = ag.genre_id
+            WHERE g.name = :genre
+            ORDER BY a.popularity DESC NULLS LAST
+            """, nativeQuery = true)
+    List<Artist> findByGenre(@Param("genre") String genre);
+
+    // Ranked top artists for one of the user's time ranges, unnesting user_top_lists.item_ids in order
+    @Query(value = """
+            SELECT a.* FROM users u
+            JOIN user_top_lists l ON l.user_id = u.id
+            CROSS JOIN LATERAL unnest(l.item_ids) WITH ORDINALITY AS item(id, rank)
+            JOIN artists a ON a.id = item.id
+            WHERE u.spotify_id = :spotifyId AND l.item_type = 'artist' AND l.time_range = :timeRange
+            ORDER BY item.rank
+            """, nativeQuery = true)
+    List<Artist> findTopForUser(@Param("spotifyId") String spotifyId, @Param("timeRange") String timeRange);
 }
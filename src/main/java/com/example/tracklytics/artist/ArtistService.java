@@ -1,8 +1,12 @@
 package com.example.tracklytics.artist;
 
+import com.example.tracklytics.insights.GenreDictionary;
+import com.example.tracklytics.user.TimeRange;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import java.util.Optional;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
 
 @Service
 public class ArtistService {
@@ -22,6 +26,31 @@ public class ArtistService {
         return artistRepository.save(artist);
     }
 
+    // Upserts the rows with native INSERT ... ON CONFLICT, so concurrent syncs of the same artist never collide.
+    // Returns spotifyId -> id; duplicates in the input are written once.
+    @Transactional
+    public Map<String, Integer> upsertAllBySpotifyId(Collection<Artist> artists) {
+        return artistRepository.upsertAll(artists);
+    }
+
+    // The join tables only need ids, so hand out references instead of loading the rows again
+    public Set<Artist> referencesTo(Integer[] ids) {
+        Set<Artist> references = new HashSet<>(ids.length);
+        for (Integer id : ids) {
+            references.add(artistRepository.getReferenceById(id));
+        }
+        return references;
+    }
+
+    // A user's top artists for one time range, in Spotify's rank order
+    public List<Artist> findTopForUser(String spotifyId, TimeRange range) {
+        return artistRepository.findTopForUser(spotifyId, range.apiValue());
+    }
+
+    public List<Artist> findByGenre(String genre) {
+        return artistRepository.findByGenre(GenreDictionary.normalize(genre));
+    }
+
     public boolean existsBySpotifyId(String spotifyId) {
         return artistRepository.findBySpotifyId(spotifyId).isPresent();
     }
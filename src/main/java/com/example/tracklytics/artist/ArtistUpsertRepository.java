@@ -0,0 +1,10 @@
+package com.example.tracklytics.artist;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface ArtistUpsertRepository {
+
+    // INSERT ... ON CONFLICT (spotify_id) DO UPDATE, one statement per batch; returns spotifyId -> id
+    Map<String, Integer> upsertAll(Collection<Artist> artists);
+}
@@ -0,0 +1,173 @@
+package com.example.tracklytics.artist;
+
+import com.example.tracklytics.insights.GenreDictionary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+
+class ArtistUpsertRepositoryImpl implements ArtistUpsertRepository {
+
+    private static final String SELECT_EXISTING =
+            "SELECT id, spotify_id, fingerprint FROM artists WHERE spotify_id = ANY (?)";
+
+    private static final String NEXT_ID_BLOCK = "SELECT nextval('artists_seq')";
+
+    // The WHERE still guards rows a concurrent sync wrote after our lookup; those come back as not returned
+    private static final String UPSERT_PREFIX = """
+            INSERT INTO artists (id, spotify_id, name, popularity, genres, fingerprint)
+            VALUES %s
+            ON CONFLICT (spotify_id) DO UPDATE SET
+                name = EXCLUDED.name,
+                popularity = EXCLUDED.popularity,
+                genres = EXCLUDED.genres,
+                fingerprint = EXCLUDED.fingerprint
+            WHERE artists.fingerprint IS DISTINCT FROM EXCLUDED.fingerprint
+            RETURNING id, spotify_id, (xmax = 0) AS inserted
+            """;
+
+    private static final String VALUES_ROW = "(?::int, ?, ?, ?::int, ?, ?::bigint)";
+
+    private static final String SELECT_IDS = "SELECT id, spotify_id FROM artists WHERE spotify_id = ANY (?)";
+
+    // artist_genres is rewritten only for rows the upsert actually inserted or updated.
+    // New genre names are inserted in name order so two syncs adding overlapping genres can't deadlock.
+    private static final String INSERT_GENRES =
+            "INSERT INTO genres (name) SELECT name FROM unnest(?::text[]) AS g(name) ORDER BY 1 ON CONFLICT (name) DO NOTHING";
+    private static final String DELETE_ARTIST_GENRES = "DELETE FROM artist_genres WHERE artist_id = ANY (?::int[])";
+    private static final String INSERT_ARTIST_GENRES = """
+            INSERT INTO artist_genres (genre_id, artist_id)
+            SELECT g.id, v.artist_id
+            FROM unnest(?::int[], ?::text[]) AS v(artist_id, name)
+            JOIN genres g ON g.name = v.name
+            ON CONFLICT DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Counter> writeCounters = new HashMap<>();
+
+    ArtistUpsertRepositoryImpl(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (String outcome : List.of("inserted", "updated", "unchanged")) {
+            writeCounters.put(outcome, Counter.builder("tracklytics.catalog.writes")
+                    .description("Catalog rows seen by the upsert, by outcome; unchanged rows were skipped by fingerprint")
+                    .tag("entity", "artist")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public Map<String, Integer> upsertAll(Collection<Artist> artists) {
+        // Dedupe (one VALUES row may only touch a row once) and sort so concurrent upserts lock rows in the same order
+        TreeMap<String, Artist> bySpotifyId = new TreeMap<>();
+        for (Artist artist : artists) {
+            bySpotifyId.put(artist.getSpotifyId(), artist);
+        }
+
+        if (bySpotifyId.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        // Known rows with a matching fingerprint need no write at all; the others keep their stored id
+        Map<String, Integer> ids = new HashMap<>();
+        Map<String, Integer> storedIds = new HashMap<>();
+        jdbcTemplate.query(SELECT_EXISTING, rs -> {
+            String spotifyId = rs.getString("spotify_id");
+            long fingerprint = rs.getLong("fingerprint");
+            if (!rs.wasNull() && fingerprint == bySpotifyId.get(spotifyId).computeFingerprint()) {
+                ids.put(spotifyId, rs.getInt("id"));
+                writeCounters.get("unchanged").increment();
+            } else {
+                storedIds.put(spotifyId, rs.getInt("id"));
+            }
+        }, (Object) bySpotifyId.keySet().toArray(new String[0]));
+
+        List<Artist> batch = new ArrayList<>(Artist.ID_ALLOCATION_SIZE);
+        for (Artist artist : bySpotifyId.values()) {
+            if (ids.containsKey(artist.getSpotifyId())) {
+                continue;
+            }
+            batch.add(artist);
+            if (batch.size() == Artist.ID_ALLOCATION_SIZE) {
+                upsertBatch(batch, storedIds, ids);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            upsertBatch(batch, storedIds, ids);
+        }
+
+        // A row committed by a concurrent sync after our lookup can be skipped by the WHERE; look those up again
+        if (ids.size() < bySpotifyId.size()) {
+            String[] missing = bySpotifyId.keySet().stream().filter(id -> !ids.containsKey(id)).toArray(String[]::new);
+            jdbcTemplate.query(SELECT_IDS, rs -> {
+                ids.put(rs.getString("spotify_id"), rs.getInt("id"));
+                writeCounters.get("unchanged").increment();
+            }, (Object) missing);
+        }
+        return ids;
+    }
+
+    // New rows take ids from one pooled block of artists_seq (hi - 49 .. hi), the same contract Hibernate follows;
+    // the block is only drawn when the batch has new rows, so re-syncing a known catalog burns no ids
+    private void upsertBatch(List<Artist> batch, Map<String, Integer> storedIds, Map<String, Integer> ids) {
+        int nextId = 0;
+        if (batch.stream().anyMatch(artist -> !storedIds.containsKey(artist.getSpotifyId()))) {
+            Long hi = jdbcTemplate.queryForObject(NEXT_ID_BLOCK, Long.class);
+            nextId = Math.toIntExact(hi - Artist.ID_ALLOCATION_SIZE + 1);
+        }
+
+        String sql = UPSERT_PREFIX.formatted(String.join(", ", Collections.nCopies(batch.size(), VALUES_ROW)));
+        List<Object> params = new ArrayList<>(batch.size() * 6);
+        for (Artist artist : batch) {
+            // Known rows pass their own id only to satisfy NOT NULL; the conflict turns them into an update
+            Integer storedId = storedIds.get(artist.getSpotifyId());
+            params.add(storedId != null ? storedId : nextId++);
+            params.add(artist.getSpotifyId());
+            params.add(artist.getName());
+            params.add(artist.getPopularity());
+            params.add(artist.getGenres());
+            params.add(artist.computeFingerprint());
+        }
+
+        Map<String, Integer> written = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            ids.put(rs.getString("spotify_id"), rs.getInt("id"));
+            written.put(rs.getString("spotify_id"), rs.getInt("id"));
+            writeCounters.get(rs.getBoolean("inserted") ? "inserted" : "updated").increment();
+        }, params.toArray());
+
+        if (!written.isEmpty()) {
+            replaceGenres(batch, written);
+        }
+    }
+
+    private void replaceGenres(List<Artist> batch, Map<String, Integer> written) {
+        List<Integer> artistIds = new ArrayList<>(written.size());
+        List<Integer> linkArtistIds = new ArrayList<>();
+        List<String> linkNames = new ArrayList<>();
+        for (Artist artist : batch) {
+            Integer artistId = written.get(artist.getSpotifyId());
+            if (artistId == null) {
+                continue;
+            }
+            artistIds.add(artistId);
+            if (artist.getGenres() != null) {
+                for (String genre : artist.getGenres().split(",")) {
+                    if (!genre.isBlank()) {
+                        linkArtistIds.add(artistId);
+                        linkNames.add(GenreDictionary.normalize(genre));
+                    }
+                }
+            }
+        }
+
+        jdbcTemplate.update(DELETE_ARTIST_GENRES, (Object) artistIds.toArray(new Integer[0]));
+        if (!linkNames.isEmpty()) {
+            jdbcTemplate.update(INSERT_GENRES, (Object) new TreeSet<>(linkNames).toArray(new String[0]));
+            jdbcTemplate.update(INSERT_ARTIST_GENRES, linkArtistIds.toArray(new Integer[0]), linkNames.toArray(new String[0]));
+        }
+    }
+}
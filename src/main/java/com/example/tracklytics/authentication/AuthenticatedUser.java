@@ -0,0 +1,14 @@
+package com.example.tracklytics.authentication;
+
+import com.example.tracklytics.user.User;
+
+import java.time.Instant;
+
+// What a bearer-token request is authenticated as: the user row's identity fields, no tokens and no JPA state
+public record AuthenticatedUser(Integer id, String spotifyId, String displayName, String email, Instant lastSyncTime) {
+
+    public static AuthenticatedUser from(User user) {
+        return new AuthenticatedUser(user.getId(), user.getSpotifyId(), user.getDisplayName(), user.getEmail(),
+                user.getLastSyncTime());
+    }
+}
@@ -1,15 +1,14 @@
 package com.example.tracklytics.authentication;
 
 import com.example.tracklytics.user.User;
+import com.example.tracklytics.user.UserDataChangedEvent;
 import com.example.tracklytics.user.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserService;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
-import org.springframework.security.oauth2.core.OAuth2RefreshToken;
 import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
@@ -26,7 +25,7 @@ public class CustomOAuth2UserService implements OAuth2UserService<OAuth2UserRequ
     private UserService userService;
 
     @Autowired
-    private OAuth2AuthorizedClientService authorizedClientService;
+    private ApplicationEventPublisher eventPublisher;
 
     private final DefaultOAuth2UserService delegate = new DefaultOAuth2UserService();
 
@@ -49,28 +48,6 @@ public class CustomOAuth2UserService implements OAuth2UserService<OAuth2UserRequ
             String accessToken = userRequest.getAccessToken().getTokenValue();
             Instant tokenExpiry = userRequest.getAccessToken().getExpiresAt();
 
-            // Try to get refresh token from authorized client
-            String refreshToken = null;
-            try {
-                // Create a temporary authorized client to access refresh token
-                OAuth2AuthorizedClient authorizedClient = new OAuth2AuthorizedClient(
-                        userRequest.getClientRegistration(),
-                        spotifyId,
-                        userRequest.getAccessToken()
-                );
-
-                // Check if there's a refresh token
-                OAuth2RefreshToken refreshTokenObj = authorizedClient.getRefreshToken();
-                if (refreshTokenObj != null) {
-                    refreshToken = refreshTokenObj.getTokenValue();
-                    System.out.println("Refresh token captured successfully");
-                } else {
-                    System.out.println("No refresh token available - this is normal for some OAuth2 flows");
-                }
-            } catch (Exception e) {
-                System.out.println("Could not retrieve refresh token: " + e.getMessage());
-            }
-
             // Check if user exists, if not create new user
             User user;
             Optional<User> existingUser = userService.findBySpotifyId(spotifyId);
@@ -86,18 +63,18 @@ public class CustomOAuth2UserService implements OAuth2UserService<OAuth2UserRequ
                 user = new User(spotifyId, displayName, email);
             }
 
-            // Set token information
+            // Set token information; the refresh token isn't in the user request and is stored by
+            // PersistingAuthorizedClientService once login completes, so an existing one is left as is
             user.setAccessToken(accessToken);
             user.setTokenExpiry(tokenExpiry);
-            user.setRefreshToken(refreshToken);
 
             System.out.println("Token info - Access: " + (accessToken != null ? "Present" : "Missing") +
-                    ", Refresh: " + (refreshToken != null ? "Present" : "Missing") +
                     ", Expires: " + tokenExpiry);
 
             // Save user to database
             User savedUser = userService.saveUser(user);
             System.out.println("User saved with ID: " + savedUser.getId());
+            eventPublisher.publishEvent(new UserDataChangedEvent(savedUser.getSpotifyId()));
 
             return new DefaultOAuth2User(
                     Collections.singleton(() -> "USER"),
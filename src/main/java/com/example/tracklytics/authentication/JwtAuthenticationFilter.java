@@ -1,7 +1,5 @@
 package com.example.tracklytics.authentication;
 
-import com.example.tracklytics.user.User;
-import com.example.tracklytics.user.UserService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,6 +7,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -23,7 +22,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtService jwtService;
 
     @Autowired
-    private UserService userService;
+    private PrincipalCache principalCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
@@ -35,12 +34,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String jwt = authHeader.substring(7);
 
             try {
-                if (jwtService.validateToken(jwt)) {
-                    String spotifyId = jwtService.getSpotifyIdFromToken(jwt);
-                    Optional<User> userOpt = userService.findBySpotifyId(spotifyId);
+                Optional<Jwt> verified = jwtService.verify(jwt);
+                if (verified.isPresent()) {
+                    String spotifyId = verified.get().getSubject();
+                    Optional<AuthenticatedUser> userOpt = principalCache.get(spotifyId);
 
                     if (userOpt.isPresent()) {
-                        User user = userOpt.get();
+                        AuthenticatedUser user = userOpt.get();
                         UsernamePasswordAuthenticationToken authToken =
                                 new UsernamePasswordAuthenticationToken(user, null, null);
                         authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -1,43 +1,57 @@
 package com.example.tracklytics.authentication;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
 import org.springframework.security.oauth2.jwt.*;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
 
 @Service
 public class JwtService {
 
-    @Value("${jwt.secret:tracklytics-jwt-secret-key-must-be-at-least-32-characters-long-for-security}")
-    private String jwtSecret;
+    private final long jwtExpiration;
+    private final JwtEncoder jwtEncoder;
+    private final JwtDecoder jwtDecoder;
 
-    @Value("${jwt.expiration:86400}") // 24 hours in seconds
-    private Long jwtExpiration;
+    // SHA-256 of the token -> its verified claims; each entry expires when the token does
+    private final Cache<String, Jwt> verifiedTokens;
 
-    private JwtEncoder jwtEncoder;
-    private JwtDecoder jwtDecoder;
+    public JwtService(@Value("${jwt.secret:tracklytics-jwt-secret-key-must-be-at-least-32-characters-long-for-security}") String jwtSecret,
+                      @Value("${jwt.expiration:86400}") long jwtExpiration, // 24 hours in seconds
+                      @Value("${jwt.verified-cache.max-size:10000}") long verifiedCacheSize,
+                      MeterRegistry meterRegistry) {
+        this.jwtExpiration = jwtExpiration;
 
-    private void initializeEncoderDecoder() {
-        if (jwtEncoder == null) {
-            // Use the secret string directly with ImmutableSecret
-            var secret = new ImmutableSecret<>(jwtSecret.getBytes());
-            this.jwtEncoder = new NimbusJwtEncoder(secret);
+        // Built once here; both are thread-safe and shared by every request
+        this.jwtEncoder = new NimbusJwtEncoder(new ImmutableSecret<>(jwtSecret.getBytes()));
+        SecretKeySpec secretKey = new SecretKeySpec(jwtSecret.getBytes(), "HmacSHA256");
+        this.jwtDecoder = NimbusJwtDecoder.withSecretKey(secretKey)
+                .macAlgorithm(MacAlgorithm.HS256)
+                .build();
 
-            // Create decoder with the same secret
-            SecretKeySpec secretKey = new SecretKeySpec(jwtSecret.getBytes(), "HmacSHA256");
-            this.jwtDecoder = NimbusJwtDecoder.withSecretKey(secretKey)
-                    .macAlgorithm(MacAlgorithm.HS256)
-                    .build();
-        }
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheSize)
+                .expireAfter(Expiry.<String, Jwt>creating((digest, jwt) -> timeUntilExpiry(jwt)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "verified-tokens");
     }
 
     public String generateToken(String spotifyId, String displayName) {
-        initializeEncoderDecoder();
-
         Instant now = Instant.now();
         Instant expiration = now.plusSeconds(jwtExpiration);
 
@@ -57,25 +71,37 @@ public class JwtService {
         return jwtEncoder.encode(parameters).getTokenValue();
     }
 
-    public String getSpotifyIdFromToken(String token) {
-        initializeEncoderDecoder();
+    // Verifies signature and expiry once and returns the claims, or empty if the token is invalid
+    public Optional<Jwt> verify(String token) {
+        String digest = digest(token);
+        Jwt cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
 
         try {
             Jwt jwt = jwtDecoder.decode(token);
-            return jwt.getSubject();
+            // Tokens without exp would never age out of the cache, so they are just not cached
+            if (jwt.getExpiresAt() != null) {
+                verifiedTokens.put(digest, jwt);
+            }
+            return Optional.of(jwt);
         } catch (JwtException e) {
-            throw new RuntimeException("Invalid token", e);
+            return Optional.empty();
         }
     }
 
-    public boolean validateToken(String token) {
-        initializeEncoderDecoder();
+    private static Duration timeUntilExpiry(Jwt jwt) {
+        Duration remaining = Duration.between(Instant.now(), jwt.getExpiresAt());
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
 
+    private static String digest(String token) {
         try {
-            jwtDecoder.decode(token);
-            return true;
-        } catch (JwtException e) {
-            return false;
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+package com.example.tracklytics.authentication;
+
+import com.example.tracklytics.sync.SyncJobQueue;
+import com.example.tracklytics.user.UserService;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.InMemoryOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.stereotype.Service;
+
+// The refresh token only reaches us here: OAuth2UserRequest carries the access token but not the refresh token,
+// and the login filter hands the full authorized client to this service right after loadUser has saved the user.
+// Replaces Boot's default in-memory service, which it still delegates to.
+@Service
+public class PersistingAuthorizedClientService implements OAuth2AuthorizedClientService {
+
+    private final InMemoryOAuth2AuthorizedClientService delegate;
+    private final UserService userService;
+    private final SyncJobQueue syncJobQueue;
+
+    public PersistingAuthorizedClientService(ClientRegistrationRepository clientRegistrationRepository,
+                                             UserService userService,
+                                             SyncJobQueue syncJobQueue) {
+        this.delegate = new InMemoryOAuth2AuthorizedClientService(clientRegistrationRepository);
+        this.userService = userService;
+        this.syncJobQueue = syncJobQueue;
+    }
+
+    @Override
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId, String principalName) {
+        return delegate.loadAuthorizedClient(clientRegistrationId, principalName);
+    }
+
+    @Override
+    public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+        delegate.saveAuthorizedClient(authorizedClient, principal);
+
+        if (authorizedClient.getRefreshToken() == null) {
+            System.out.println("No refresh token in the token response for " + principal.getName());
+            return;
+        }
+        // The principal name is the Spotify id (user-name-attribute: id)
+        boolean saved = userService.updateTokens(principal.getName(),
+                authorizedClient.getAccessToken().getTokenValue(),
+                authorizedClient.getAccessToken().getExpiresAt(),
+                authorizedClient.getRefreshToken().getTokenValue());
+        System.out.println(saved
+                ? "Refresh token captured for " + principal.getName()
+                : "Could not store refresh token - no user row for " + principal.getName());
+        // Usually the job died on the revoked token this login replaces
+        if (saved && syncJobQueue.reviveDead(principal.getName())) {
+            System.out.println("Revived dead-lettered sync job for " + principal.getName());
+        }
+    }
+
+    @Override
+    public void removeAuthorizedClient(String clientRegistrationId, String principalName) {
+        delegate.removeAuthorizedClient(clientRegistrationId, principalName);
+    }
+}
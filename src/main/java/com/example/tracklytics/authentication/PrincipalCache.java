@@ -0,0 +1,52 @@
+package com.example.tracklytics.authentication;
+
+import com.example.tracklytics.user.UserDataChangedEvent;
+import com.example.tracklytics.user.UserService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// spotifyId -> AuthenticatedUser, so bearer-token requests don't load the user row every time
+@Component
+public class PrincipalCache {
+
+    private final UserService userService;
+    private final Cache<String, AuthenticatedUser> cache;
+
+    public PrincipalCache(UserService userService,
+                          @Value("${jwt.principal-cache.ttl-seconds:300}") long ttlSeconds,
+                          @Value("${jwt.principal-cache.max-size:10000}") long maxSize,
+                          MeterRegistry meterRegistry) {
+        this.userService = userService;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size tagged cache=principals
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "principals");
+    }
+
+    public Optional<AuthenticatedUser> get(String spotifyId) {
+        // Unknown users aren't cached (the mapping function returns null), so a later first login is seen at once
+        return Optional.ofNullable(cache.get(spotifyId,
+                id -> userService.findBySpotifyId(id).map(AuthenticatedUser::from).orElse(null)));
+    }
+
+    public void evict(String spotifyId) {
+        cache.invalidate(spotifyId);
+    }
+
+    @EventListener
+    public void onUserDataChanged(UserDataChangedEvent event) {
+        evict(event.spotifyId());
+    }
+}
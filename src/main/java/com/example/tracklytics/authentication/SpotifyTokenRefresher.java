@@ -0,0 +1,203 @@
+package com.example.tracklytics.authentication;
+
+import com.example.tracklytics.cluster.ClusterMembership;
+import com.example.tracklytics.user.UserService;
+import com.example.tracklytics.user.UserToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2RefreshTokenGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.RestClientRefreshTokenTokenResponseClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Keeps this node's users' Spotify access tokens alive: users are held in a priority queue ordered by token expiry
+// and refreshed in batches a little before it, so scheduled syncs find a live token instead of skipping the user.
+@Component
+public class SpotifyTokenRefresher {
+
+    private enum Outcome { REFRESHED, SKIPPED, REVOKED, FAILED }
+
+    private record Due(int userId, Instant dueAt) {
+    }
+
+    private final UserService userService;
+    private final ClusterMembership clusterMembership;
+    private final ClientRegistration registration;
+    private final OAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> tokenResponseClient;
+    private final Duration lead;
+    private final Duration reloadInterval;
+    private final Duration retryDelay;
+    private final int batchSize;
+    private final int maxQueued;
+
+    // Only touched from refreshDueTokens(), which never overlaps itself
+    private final PriorityQueue<Due> queue = new PriorityQueue<>(Comparator.comparing(Due::dueAt));
+    private final Set<Integer> queued = new HashSet<>();
+    private Instant nextReload = Instant.MIN;
+
+    @Autowired
+    public SpotifyTokenRefresher(UserService userService, ClusterMembership clusterMembership,
+                                 ClientRegistrationRepository clientRegistrationRepository,
+                                 @Value("${spotify.token-refresh.lead-seconds:300}") long leadSeconds,
+                                 @Value("${spotify.token-refresh.reload-interval-seconds:300}") long reloadIntervalSeconds,
+                                 @Value("${spotify.token-refresh.retry-delay-seconds:60}") long retryDelaySeconds,
+                                 @Value("${spotify.token-refresh.batch-size:50}") int batchSize,
+                                 @Value("${spotify.token-refresh.max-queued:50000}") int maxQueued) {
+        this(userService, clusterMembership, clientRegistrationRepository, new RestClientRefreshTokenTokenResponseClient(),
+                leadSeconds, reloadIntervalSeconds, retryDelaySeconds, batchSize, maxQueued);
+    }
+
+    SpotifyTokenRefresher(UserService userService, ClusterMembership clusterMembership,
+                          ClientRegistrationRepository clientRegistrationRepository,
+                          OAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> tokenResponseClient,
+                          long leadSeconds, long reloadIntervalSeconds, long retryDelaySeconds,
+                          int batchSize, int maxQueued) {
+        this.userService = userService;
+        this.clusterMembership = clusterMembership;
+        this.registration = clientRegistrationRepository.findByRegistrationId("spotify");
+        this.tokenResponseClient = tokenResponseClient;
+        this.lead = Duration.ofSeconds(Math.max(0, leadSeconds));
+        this.reloadInterval = Duration.ofSeconds(Math.max(1, reloadIntervalSeconds));
+        this.retryDelay = Duration.ofSeconds(Math.max(1, retryDelaySeconds));
+        this.batchSize = Math.max(1, batchSize);
+        this.maxQueued = Math.max(1, maxQueued);
+    }
+
+    @Scheduled(fixedDelayString = "${spotify.token-refresh.poll-interval-ms:5000}")
+    public void refreshDueTokens() {
+        try {
+            Instant now = Instant.now();
+            if (!now.isBefore(nextReload)) {
+                reload(now);
+                nextReload = now.plus(reloadInterval);
+            }
+
+            List<Integer> batch;
+            while (!(batch = pollDue(Instant.now())).isEmpty()) {
+                refreshBatch(batch);
+            }
+        } catch (Exception e) {
+            System.err.println("Error refreshing Spotify tokens: " + e.getMessage());
+        }
+    }
+
+    // Pulls in every owned token expiring before the next reload could see it in time
+    private void reload(Instant now) {
+        int added = 0;
+        for (UserToken token : userService.findTokensExpiringBefore(now.plus(lead).plus(reloadInterval), maxQueued)) {
+            if (clusterMembership.owns(token.id()) && queued.add(token.id())) {
+                Instant dueAt = token.tokenExpiry() != null ? token.tokenExpiry().minus(lead) : now;
+                queue.add(new Due(token.id(), dueAt));
+                added++;
+            }
+        }
+        if (added > 0) {
+            System.out.println("Queued " + added + " Spotify tokens for refresh (" + queue.size() + " pending)");
+        }
+    }
+
+    // Users that moved to another node since they were queued are dropped; their new owner's reload picks them up
+    private List<Integer> pollDue(Instant now) {
+        List<Integer> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && !queue.isEmpty() && !queue.peek().dueAt().isAfter(now)) {
+            int userId = queue.poll().userId();
+            queued.remove(userId);
+            if (clusterMembership.owns(userId)) {
+                batch.add(userId);
+            }
+        }
+        return batch;
+    }
+
+    private void refreshBatch(List<Integer> userIds) {
+        // Re-read just before refreshing: the user may have logged in again since they were queued
+        List<UserToken> tokens = userService.findTokensByIds(userIds);
+        Instant horizon = Instant.now().plus(lead).plus(reloadInterval);
+
+        List<Future<Outcome>> outcomes = new ArrayList<>(tokens.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (UserToken token : tokens) {
+                // Checked again here too: a rebalance can land while earlier batches were running
+                outcomes.add(executor.submit(() -> clusterMembership.owns(token.id())
+                        ? refresh(token, horizon)
+                        : Outcome.SKIPPED));
+            }
+        }
+
+        int refreshed = 0, revoked = 0, failed = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Outcome outcome = outcomes.get(i).state() == Future.State.SUCCESS ? outcomes.get(i).resultNow() : Outcome.FAILED;
+            switch (outcome) {
+                case REFRESHED -> refreshed++;
+                case REVOKED -> revoked++;
+                case FAILED -> {
+                    failed++;
+                    int userId = tokens.get(i).id();
+                    if (queued.add(userId)) {
+                        queue.add(new Due(userId, Instant.now().plus(retryDelay)));
+                    }
+                }
+                case SKIPPED -> {}
+            }
+        }
+        System.out.println("Spotify token refresh batch - " + refreshed + " refreshed, " + revoked + " revoked, " +
+                failed + " failed (will retry)");
+    }
+
+    private Outcome refresh(UserToken token, Instant horizon) {
+        if (token.refreshToken() == null || (token.tokenExpiry() != null && token.tokenExpiry().isAfter(horizon))) {
+            return Outcome.SKIPPED;
+        }
+        try {
+            OAuth2AccessTokenResponse response = tokenResponseClient.getTokenResponse(new OAuth2RefreshTokenGrantRequest(
+                    registration, currentAccessToken(token), new OAuth2RefreshToken(token.refreshToken(), null)));
+
+            OAuth2AccessToken accessToken = response.getAccessToken();
+            String rotated = response.getRefreshToken() != null ? response.getRefreshToken().getTokenValue() : null;
+            userService.updateTokens(token.id(), accessToken.getTokenValue(), accessToken.getExpiresAt(), rotated);
+            return Outcome.REFRESHED;
+        } catch (OAuth2AuthorizationException e) {
+            if ("invalid_grant".equals(e.getError().getErrorCode())) {
+                // Revoked or expired refresh token: stop trying until the user logs in again. A login that raced
+                // this refresh has already stored a new token, which must not be cleared.
+                if (!userService.clearRefreshToken(token.id(), token.refreshToken())) {
+                    System.out.println("Spotify refresh token for user " + token.spotifyId() + " was replaced while refreshing");
+                    return Outcome.SKIPPED;
+                }
+                System.err.println("Spotify refresh token revoked for user " + token.spotifyId());
+                return Outcome.REVOKED;
+            }
+            System.err.println("Failed to refresh Spotify token for user " + token.spotifyId() + ": " + e.getMessage());
+            return Outcome.FAILED;
+        } catch (RuntimeException e) {
+            System.err.println("Failed to refresh Spotify token for user " + token.spotifyId() + ": " + e.getMessage());
+            return Outcome.FAILED;
+        }
+    }
+
+    // The grant request needs the current access token object; only its scopes are ever sent (none here)
+    private static OAuth2AccessToken currentAccessToken(UserToken token) {
+        Instant expiresAt = token.tokenExpiry() != null ? token.tokenExpiry() : Instant.now();
+        String value = token.accessToken() != null && !token.accessToken().isBlank() ? token.accessToken() : "expired";
+        return new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, value, expiresAt.minusSeconds(1), expiresAt);
+    }
+}
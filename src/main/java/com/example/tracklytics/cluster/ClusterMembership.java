@@ -0,0 +1,111 @@
+package com.example.tracklytics.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+
+// Tracks which Tracklytics instances are alive through heartbeat rows in cluster_nodes and keeps a hash ring
+// of them, so scheduled work can be split into one shard of users per node.
+// Waits for schema.sql so the first heartbeat can run during startup, before any scheduled job looks at the ring.
+@Component
+@DependsOnDatabaseInitialization
+public class ClusterMembership {
+
+    private static final String HEARTBEAT = """
+            INSERT INTO cluster_nodes (node_id, started_at, heartbeat_at)
+            VALUES (?, now(), now())
+            ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = now()
+            """;
+
+    private static final String LIVE_NODES = """
+            SELECT node_id FROM cluster_nodes
+            WHERE heartbeat_at > now() - (? * interval '1 second')
+            """;
+
+    // Rows of nodes that stopped without deregistering are only kept around long enough to be noticed
+    private static final String PRUNE = """
+            DELETE FROM cluster_nodes WHERE heartbeat_at < now() - (? * interval '1 second')
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+    private final int virtualNodes;
+    private final long timeoutSeconds;
+
+    private volatile HashRing ring;
+
+    public ClusterMembership(JdbcTemplate jdbcTemplate,
+                             @Value("${cluster.node-id:}") String nodeId,
+                             @Value("${cluster.virtual-nodes:160}") int virtualNodes,
+                             @Value("${cluster.node-timeout-seconds:30}") long timeoutSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        // RuntimeMXBean name is "pid@hostname"; the suffix keeps a restarted instance from inheriting old leases
+        this.nodeId = nodeId.isBlank()
+                ? ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8)
+                : nodeId;
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.timeoutSeconds = Math.max(1, timeoutSeconds);
+        // Owns nothing until a heartbeat has seen the other nodes; assuming a ring of just ourselves would
+        // make a restarting node claim every user until then
+        this.ring = new HashRing(List.of(), this.virtualNodes);
+    }
+
+    @PostConstruct
+    void join() {
+        heartbeat();
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public HashRing ring() {
+        return ring;
+    }
+
+    public boolean owns(int userId) {
+        return nodeId.equals(ring.ownerOf(userId));
+    }
+
+    public HashRing.Arcs ownedArcs() {
+        return ring.arcsOf(nodeId);
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        try {
+            jdbcTemplate.update(HEARTBEAT, nodeId);
+            jdbcTemplate.update(PRUNE, timeoutSeconds * 10);
+            // Sorted in Java, not by the database collation, so it compares equal to HashRing.nodes()
+            TreeSet<String> nodes = new TreeSet<>(jdbcTemplate.queryForList(LIVE_NODES, String.class, timeoutSeconds));
+            nodes.add(nodeId);
+            List<String> live = List.copyOf(nodes);
+
+            if (!live.equals(ring.nodes())) {
+                ring = new HashRing(live, virtualNodes);
+                System.out.println("Cluster membership changed - " + live.size() + " nodes: " + live);
+            }
+        } catch (Exception e) {
+            // Keep the last known ring; a node that can't reach the database can't do scheduled work anyway
+            System.err.println("Cluster heartbeat failed for " + nodeId + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        try {
+            jdbcTemplate.update("DELETE FROM cluster_nodes WHERE node_id = ?", nodeId);
+        } catch (Exception e) {
+            System.err.println("Could not deregister node " + nodeId + ": " + e.getMessage());
+        }
+    }
+}
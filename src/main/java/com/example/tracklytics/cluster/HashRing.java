@@ -0,0 +1,102 @@
+package com.example.tracklytics.cluster;
+
+import com.example.tracklytics.ContentFingerprint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Immutable consistent-hash ring over the 32-bit space. Each node is placed at virtualNodes points, and a key
+// belongs to the first point at or after its hash, so a join or leave only moves the keys next to that node's points.
+public final class HashRing {
+
+    private static final long SPACE_MASK = 0xFFFFFFFFL;
+    // Knuth's multiplicative constant; USER_HASH_SQL must compute exactly the same value
+    private static final long USER_HASH_MULTIPLIER = 2654435761L;
+
+    // SQL twin of hashUserId(), for filtering on owned arcs in the database (user ids are positive ints, so no overflow)
+    public static final String USER_HASH_SQL = "((%s::bigint * 2654435761) & 4294967295)";
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    public HashRing(List<String> nodes, int virtualNodes) {
+        this.nodes = nodes.stream().distinct().sorted().toList();
+        int perNode = Math.max(1, virtualNodes);
+
+        long[][] placed = new long[this.nodes.size() * perNode][];
+        int n = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int replica = 0; replica < perNode; replica++) {
+                placed[n++] = new long[]{pointHash(this.nodes.get(node), replica), node};
+            }
+        }
+        // Ties (vanishingly rare) are broken by node name order so every node builds the same ring
+        Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        this.points = new long[placed.length];
+        this.owners = new int[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i][0];
+            owners[i] = (int) placed[i][1];
+        }
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    public String ownerOf(int userId) {
+        if (isEmpty()) {
+            return null;
+        }
+        int i = Arrays.binarySearch(points, hashUserId(userId));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return nodes.get(owners[i == points.length ? 0 : i]);
+    }
+
+    // The (from, to] hash ranges owned by node; the arc that wraps past the top of the space is split in two
+    public Arcs arcsOf(String node) {
+        int index = nodes.indexOf(node);
+        List<long[]> arcs = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            if (owners[i] != index) {
+                continue;
+            }
+            if (i == 0) {
+                arcs.add(new long[]{points[points.length - 1], SPACE_MASK});
+                arcs.add(new long[]{-1, points[0]});
+            } else {
+                arcs.add(new long[]{points[i - 1], points[i]});
+            }
+        }
+
+        long[] from = new long[arcs.size()];
+        long[] to = new long[arcs.size()];
+        for (int i = 0; i < arcs.size(); i++) {
+            from[i] = arcs.get(i)[0];
+            to[i] = arcs.get(i)[1];
+        }
+        return new Arcs(from, to);
+    }
+
+    public static long hashUserId(int userId) {
+        return (userId * USER_HASH_MULTIPLIER) & SPACE_MASK;
+    }
+
+    private static long pointHash(String node, int replica) {
+        long hash = ContentFingerprint.of(node, replica);
+        return (hash ^ (hash >>> 32)) & SPACE_MASK;
+    }
+
+    // Parallel arrays, ready to bind as bigint[] parameters
+    public record Arcs(long[] from, long[] to) {
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.tracklytics.insights;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Process-wide interning of normalized genre names to dense int ids (0, 1, 2, ...), so the insights
+// code can work on int arrays and BitSets instead of strings. Ids are stable for the life of the process.
+public final class GenreDictionary {
+
+    private static final GenreDictionary GLOBAL = new GenreDictionary();
+
+    private static final int[] NO_GENRES = new int[0];
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Indexed by id; written under the lock before the id is published through the map
+    private volatile String[] names = new String[256];
+    private int size;
+
+    public static GenreDictionary global() {
+        return GLOBAL;
+    }
+
+    public int intern(String genre) {
+        String normalized = normalize(genre);
+        Integer id = ids.get(normalized);
+        if (id != null) {
+            return id;
+        }
+
+        lock.lock();
+        try {
+            id = ids.get(normalized);
+            if (id != null) {
+                return id;
+            }
+
+            int newId = size;
+            if (newId == names.length) {
+                names = Arrays.copyOf(names, newId * 2);
+            }
+            names[newId] = normalized;
+            size = newId + 1;
+
+            ids.put(normalized, newId);
+            return newId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Splits a comma-joined genres column into sorted, de-duplicated ids
+    public int[] parse(String commaJoinedGenres) {
+        if (commaJoinedGenres == null || commaJoinedGenres.isBlank()) {
+            return NO_GENRES;
+        }
+
+        String[] parts = commaJoinedGenres.split(",");
+        int[] parsed = new int[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            if (!part.isBlank()) {
+                parsed[count++] = intern(part);
+            }
+        }
+
+        Arrays.sort(parsed, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || parsed[unique - 1] != parsed[i]) {
+                parsed[unique++] = parsed[i];
+            }
+        }
+        return unique == parsed.length ? parsed : Arrays.copyOf(parsed, unique);
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    // Same normalization the genres table uses
+    public static String normalize(String genre) {
+        return genre.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.tracklytics.insights;
+
+// Mood buckets a genre name falls into, as bit flags so one genre can count towards several
+public final class GenreMood {
+
+    public static final int ENERGETIC = 1;
+    public static final int CHILL = 1 << 1;
+    public static final int EMOTIONAL = 1 << 2;
+
+    private GenreMood() {}
+}
@@ -0,0 +1,108 @@
+package com.example.tracklytics.insights;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Aho-Corasick automaton compiled to a flat DFA: one table lookup per character finds every keyword
+// occurring in the text, and the result is the OR of the flags attached to those keywords.
+final class KeywordAutomaton {
+
+    private final int[] charClass;   // char -> column; 0 for characters that appear in no keyword
+    private final int columns;
+    private final int[] transitions; // state * columns + column -> next state
+    private final int[] outputs;     // state -> flags of every keyword ending here (suffix links folded in)
+
+    KeywordAutomaton(Map<String, Integer> keywordFlags) {
+        int maxChar = 0;
+        for (String keyword : keywordFlags.keySet()) {
+            for (int i = 0; i < keyword.length(); i++) {
+                maxChar = Math.max(maxChar, keyword.charAt(i));
+            }
+        }
+        charClass = new int[maxChar + 1];
+        int nextColumn = 1;
+        for (String keyword : keywordFlags.keySet()) {
+            for (int i = 0; i < keyword.length(); i++) {
+                if (charClass[keyword.charAt(i)] == 0) {
+                    charClass[keyword.charAt(i)] = nextColumn++;
+                }
+            }
+        }
+        columns = nextColumn;
+
+        // Trie first; -1 marks a missing edge until the BFS below fills it in
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> trieOutputs = new ArrayList<>();
+        trie.add(newRow());
+        trieOutputs.add(0);
+        for (Map.Entry<String, Integer> entry : keywordFlags.entrySet()) {
+            int state = 0;
+            for (int i = 0; i < entry.getKey().length(); i++) {
+                int column = charClass[entry.getKey().charAt(i)];
+                if (trie.get(state)[column] < 0) {
+                    trie.get(state)[column] = trie.size();
+                    trie.add(newRow());
+                    trieOutputs.add(0);
+                }
+                state = trie.get(state)[column];
+            }
+            trieOutputs.set(state, trieOutputs.get(state) | entry.getValue());
+        }
+
+        int states = trie.size();
+        transitions = new int[states * columns];
+        outputs = new int[states];
+        int[] failure = new int[states];
+        for (int state = 0; state < states; state++) {
+            System.arraycopy(trie.get(state), 0, transitions, state * columns, columns);
+            outputs[state] = trieOutputs.get(state);
+        }
+
+        // Breadth-first, so a state's failure target is always complete before the state itself
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int column = 0; column < columns; column++) {
+            int child = transitions[column];
+            if (child < 0) {
+                transitions[column] = 0;
+            } else {
+                failure[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] |= outputs[failure[state]];
+            for (int column = 0; column < columns; column++) {
+                int child = transitions[state * columns + column];
+                int fallback = transitions[failure[state] * columns + column];
+                if (child < 0) {
+                    transitions[state * columns + column] = fallback;
+                } else {
+                    failure[child] = fallback;
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    int match(String text) {
+        int state = 0;
+        int flags = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int column = c < charClass.length ? charClass[c] : 0;
+            state = transitions[state * columns + column];
+            flags |= outputs[state];
+        }
+        return flags;
+    }
+
+    private int[] newRow() {
+        int[] row = new int[columns];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.tracklytics.insights;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Maps a genre to GenreMood flags. All keywords are matched in one pass by a precompiled automaton,
+// and each genre id is classified at most once per process.
+@Component
+public class MoodClassifier {
+
+    private final GenreDictionary genreDictionary = GenreDictionary.global();
+    private final KeywordAutomaton automaton;
+
+    // genre id -> flags + 1, so 0 means "not classified yet"
+    private volatile byte[] memo = new byte[256];
+    private final ReentrantLock memoLock = new ReentrantLock();
+
+    public MoodClassifier(@Value("${insights.mood.energetic:rock,punk,metal,dance,electronic}") List<String> energetic,
+                          @Value("${insights.mood.chill:ambient,jazz,acoustic,folk}") List<String> chill,
+                          @Value("${insights.mood.emotional:indie,alternative,singer-songwriter,blues}") List<String> emotional) {
+        Map<String, Integer> keywordFlags = new HashMap<>();
+        addKeywords(keywordFlags, energetic, GenreMood.ENERGETIC);
+        addKeywords(keywordFlags, chill, GenreMood.CHILL);
+        addKeywords(keywordFlags, emotional, GenreMood.EMOTIONAL);
+        this.automaton = new KeywordAutomaton(keywordFlags);
+    }
+
+    public int moodFlags(int genreId) {
+        byte[] current = memo;
+        if (genreId < current.length && current[genreId] != 0) {
+            return current[genreId] - 1;
+        }
+
+        int flags = automaton.match(genreDictionary.name(genreId));
+        memoLock.lock();
+        try {
+            byte[] updated = memo;
+            if (genreId >= updated.length) {
+                updated = Arrays.copyOf(updated, Math.max(updated.length * 2, genreId + 1));
+            }
+            updated[genreId] = (byte) (flags + 1);
+            memo = updated;
+        } finally {
+            memoLock.unlock();
+        }
+        return flags;
+    }
+
+    private static void addKeywords(Map<String, Integer> keywordFlags, List<String> keywords, int flag) {
+        for (String keyword : keywords) {
+            String normalized = GenreDictionary.normalize(keyword);
+            if (!normalized.isEmpty()) {
+                keywordFlags.merge(normalized, flag, (a, b) -> a | b);
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.tracklytics.insights;
 
+import com.example.tracklytics.artist.Artist;
+import com.example.tracklytics.track.Track;
 import com.example.tracklytics.user.User;
 import org.springframework.stereotype.Service;
 import java.util.*;
@@ -9,16 +11,27 @@ import java.util.List;
 @Service
 public class MusicInsightsService {
 
+    private final GenreDictionary genreDictionary = GenreDictionary.global();
+
+    @Autowired
+    private MoodClassifier moodClassifier;
+
     public MusicPersonality analyzeMusicPersonality(User user) {
+        return analyzeMusicPersonality(user.getTopTracks(), user.getTopArtists());
+    }
+
+    // Same analysis over any pair of top lists, e.g. one of the short- or long-term ranges
+    public MusicPersonality analyzeMusicPersonality(Collection<Track> topTracks, Collection<Artist> topArtists) {
         MusicPersonality personality = new MusicPersonality();
 
         // Existing analysis
-        Set<String> allGenres = extractAllGenres(user);
-        int diversityScore = calculateDiversityScore(allGenres.size());
-        int mainstreamScore = calculateMainstreamScore(user);
+        BitSet allGenres = extractAllGenres(topArtists);
+        int genreCount = allGenres.cardinality();
+        int diversityScore = calculateDiversityScore(genreCount);
+        int mainstreamScore = calculateMainstreamScore(topTracks);
         String listeningMood = analyzeMoodFromGenres(allGenres);
-        String artistLoyalty = analyzeArtistLoyalty(user);
-        String trackLengthPreference = analyzeTrackLengthPreference(user);
+        String artistLoyalty = analyzeArtistLoyalty(topTracks, topArtists);
+        String trackLengthPreference = analyzeTrackLengthPreference(topTracks);
 
         // Set all the values
         personality.setDiversityScore(diversityScore);
@@ -28,7 +41,7 @@ public class MusicInsightsService {
         personality.setTrackLengthPreference(trackLengthPreference);
 
         String personalityType = determinePersonalityType(diversityScore, mainstreamScore);
-        String description = generateDescription(personalityType, allGenres.size(), mainstreamScore);
+        String description = generateDescription(personalityType, genreCount, mainstreamScore);
 
         personality.setPrimaryPersonality(personalityType);
         personality.setDescription(description);
@@ -36,10 +49,10 @@ public class MusicInsightsService {
         return personality;
     }
 
-    private int calculateMainstreamScore(User user) {
-        if (user.getTopTracks().isEmpty()) return 50;
+    private int calculateMainstreamScore(Collection<Track> topTracks) {
+        if (topTracks.isEmpty()) return 50;
 
-        double totalPopularity = user.getTopTracks().stream()
+        double totalPopularity = topTracks.stream()
                 .mapToInt(track -> track.getPopularity() != null ? track.getPopularity() : 50)
                 .average()
                 .orElse(50.0);
@@ -83,15 +96,13 @@ public class MusicInsightsService {
     }
 
 
-    private Set<String> extractAllGenres(User user) {
-        Set<String> genres = new HashSet<>();
+    // Union of the top artists' genre ids; artists parse their genres into ids once, so nothing here allocates strings
+    private BitSet extractAllGenres(Collection<Artist> topArtists) {
+        BitSet genres = new BitSet(genreDictionary.size());
 
-        user.getTopArtists().forEach(artist -> {
-            if (artist.getGenres() != null && !artist.getGenres().isEmpty()) {
-                String[] artistGenres = artist.getGenres().split(",");
-                for (String genre : artistGenres) {
-                    genres.add(genre.trim().toLowerCase());
-                }
+        topArtists.forEach(artist -> {
+            for (int genreId : artist.getGenreIds()) {
+                genres.set(genreId);
             }
         });
 
@@ -111,30 +122,20 @@ public class MusicInsightsService {
         return 100; // Only 60+ genres gets perfect score
     }
 
-    public String analyzeMoodFromGenres(Set<String> genres) {
+    public String analyzeMoodFromGenres(BitSet genreIds) {
         int energeticCount = 0;
         int chillCount = 0;
         int emotionalCount = 0;
 
-        for (String genre : genres) {
-            String lowerGenre = genre.toLowerCase();
-
-            // Energetic genres
-            if (lowerGenre.contains("rock") || lowerGenre.contains("punk") ||
-                    lowerGenre.contains("metal") || lowerGenre.contains("dance") ||
-                    lowerGenre.contains("electronic")) {
+        for (int genreId = genreIds.nextSetBit(0); genreId >= 0; genreId = genreIds.nextSetBit(genreId + 1)) {
+            int mood = moodClassifier.moodFlags(genreId);
+            if ((mood & GenreMood.ENERGETIC) != 0) {
                 energeticCount++;
             }
-
-            // Chill genres
-            if (lowerGenre.contains("ambient") || lowerGenre.contains("jazz") ||
-                    lowerGenre.contains("acoustic") || lowerGenre.contains("folk")) {
+            if ((mood & GenreMood.CHILL) != 0) {
                 chillCount++;
             }
-
-            // Emotional genres
-            if (lowerGenre.contains("indie") || lowerGenre.contains("alternative") ||
-                    lowerGenre.contains("singer-songwriter") || lowerGenre.contains("blues")) {
+            if ((mood & GenreMood.EMOTIONAL) != 0) {
                 emotionalCount++;
             }
         }
@@ -150,11 +151,11 @@ public class MusicInsightsService {
         }
     }
 
-    public String analyzeArtistLoyalty(User user) {
-        if (user.getTopArtists().isEmpty()) return "Unknown";
+    public String analyzeArtistLoyalty(Collection<Track> topTracks, Collection<Artist> topArtists) {
+        if (topArtists.isEmpty()) return "Unknown";
 
-        int totalArtists = user.getTopArtists().size();
-        int totalTracks = user.getTopTracks().size();
+        int totalArtists = topArtists.size();
+        int totalTracks = topTracks.size();
 
         if (totalTracks == 0) return "Unknown";
 
@@ -172,10 +173,10 @@ public class MusicInsightsService {
         }
     }
 
-    public String analyzeTrackLengthPreference(User user) {
-        if (user.getTopTracks().isEmpty()) return "Unknown";
+    public String analyzeTrackLengthPreference(Collection<Track> topTracks) {
+        if (topTracks.isEmpty()) return "Unknown";
 
-        double averageDuration = user.getTopTracks().stream()
+        double averageDuration = topTracks.stream()
                 .filter(track -> track.getDurationMs() != null)
                 .mapToInt(track -> track.getDurationMs())
                 .average()
@@ -202,16 +203,23 @@ public class MusicInsightsService {
         MusicPersonality personality = analyzeMusicPersonality(user);
 
         // Always save - used for weekly snapshots
-        PersonalityHistory history = new PersonalityHistory(user, personality);
-        personalityHistoryRepository.save(history);
+        saveHistory(user, personality);
 
         return personality;
     }
 
+    public PersonalityHistory saveHistory(User user, MusicPersonality personality) {
+        return personalityHistoryRepository.save(new PersonalityHistory(user, personality));
+    }
+
     public List<PersonalityHistory> getPersonalityHistory(User user) {
         return personalityHistoryRepository.findByUserOrderByAnalyzedAtDesc(user);
     }
 
+    public List<PersonalityHistory> getPersonalityHistory(Integer userId) {
+        return personalityHistoryRepository.findByUserIdOrderByAnalyzedAtDesc(userId);
+    }
+
     public MusicPersonality analyzeMusicPersonalityOnly(User user) {
         return analyzeMusicPersonality(user);
     }
@@ -8,5 +8,7 @@ public interface PersonalityHistoryRepository extends JpaRepository<PersonalityH
 
     List<PersonalityHistory> findByUserOrderByAnalyzedAtDesc(User user);
 
+    List<PersonalityHistory> findByUserIdOrderByAnalyzedAtDesc(Integer userId);
+
     PersonalityHistory findFirstByUserOrderByAnalyzedAtDesc(User user);
 }
@@ -0,0 +1,109 @@
+package com.example.tracklytics.insights;
+
+import com.example.tracklytics.cluster.ClusterMembership;
+import com.example.tracklytics.user.User;
+import com.example.tracklytics.user.UserService;
+import com.example.tracklytics.user.UserSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Weekly personality snapshot for the users this node owns on the cluster hash ring: users are read in keyset
+// id pages, each page is loaded, analyzed and written (one batched saveAll) on its own worker, one per core by default.
+@Service
+public class PersonalitySnapshotJob {
+
+    private final UserService userService;
+    private final MusicInsightsService musicInsightsService;
+    private final PersonalityHistoryRepository personalityHistoryRepository;
+    private final ClusterMembership clusterMembership;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public PersonalitySnapshotJob(UserService userService, MusicInsightsService musicInsightsService,
+                                  PersonalityHistoryRepository personalityHistoryRepository,
+                                  ClusterMembership clusterMembership,
+                                  @Value("${snapshot.chunk-size:500}") int chunkSize,
+                                  @Value("${snapshot.parallelism:0}") int parallelism) {
+        this.userService = userService;
+        this.musicInsightsService = musicInsightsService;
+        this.personalityHistoryRepository = personalityHistoryRepository;
+        this.clusterMembership = clusterMembership;
+        this.chunkSize = Math.max(1, chunkSize);
+        // 0 means one worker per core
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    public PersonalitySnapshotReport run() {
+        long started = System.nanoTime();
+        int users = 0;
+
+        AtomicInteger saved = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        List<Future<?>> chunks = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+            // Keyset pages of ids double as the work chunks
+            for (List<UserSummary> page : userService.userPages(chunkSize)) {
+                // Other nodes snapshot the ids we skip here
+                List<Integer> chunk = page.stream().map(UserSummary::id).filter(clusterMembership::owns).toList();
+                if (chunk.isEmpty()) {
+                    continue;
+                }
+                users += chunk.size();
+                chunks.add(executor.submit(() -> snapshotChunk(chunk, saved, skipped, failed)));
+            }
+        }
+
+        for (Future<?> chunk : chunks) {
+            if (chunk.state() == Future.State.FAILED) {
+                System.err.println("Personality snapshot chunk failed: " + chunk.exceptionNow().getMessage());
+            }
+        }
+
+        return new PersonalitySnapshotReport(users, saved.get(), skipped.get(), failed.get(),
+                Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private void snapshotChunk(List<Integer> userIds, AtomicInteger saved, AtomicInteger skipped, AtomicInteger failed) {
+        List<User> users;
+        try {
+            users = userService.findWithTopListsByIds(userIds);
+        } catch (RuntimeException e) {
+            failed.addAndGet(userIds.size());
+            throw e;
+        }
+
+        List<PersonalityHistory> snapshots = new ArrayList<>(users.size());
+        for (User user : users) {
+            // Only process users with music data
+            if (user.getTopArtists().isEmpty() || user.getTopTracks().isEmpty()) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            try {
+                snapshots.add(new PersonalityHistory(user, musicInsightsService.analyzeMusicPersonality(user)));
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                System.err.println("Failed to create personality snapshot for " + user.getDisplayName() + ": " + e.getMessage());
+            }
+        }
+
+        try {
+            // One transaction per chunk; Hibernate batches the INSERTs (jdbc.batch_size)
+            personalityHistoryRepository.saveAll(snapshots);
+            saved.addAndGet(snapshots.size());
+        } catch (RuntimeException e) {
+            failed.addAndGet(snapshots.size());
+            throw e;
+        }
+    }
+}
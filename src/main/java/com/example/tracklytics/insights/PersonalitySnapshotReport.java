@@ -0,0 +1,11 @@
+package com.example.tracklytics.insights;
+
+import java.time.Duration;
+
+public record PersonalitySnapshotReport(int users, int saved, int skipped, int failed, Duration elapsed) {
+
+    public double usersPerSecond() {
+        double seconds = elapsed.toNanos() / 1_000_000_000.0;
+        return seconds > 0 ? users / seconds : users;
+    }
+}
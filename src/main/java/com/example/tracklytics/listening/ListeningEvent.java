@@ -0,0 +1,6 @@
+package com.example.tracklytics.listening;
+
+import java.time.Instant;
+
+public record ListeningEvent(int userId, int trackId, Instant playedAt, String contextType) {
+}
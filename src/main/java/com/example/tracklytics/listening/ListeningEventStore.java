@@ -0,0 +1,80 @@
+package com.example.tracklytics.listening;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Append-only writes to listening_events, which is range-partitioned by calendar month (UTC) on played_at.
+// Partitions are created the first time a month shows up, so there is no default partition to drain later.
+@Component
+public class ListeningEventStore {
+
+    // The primary key (user_id, played_at) makes a re-sent play a no-op, so appends can be retried safely
+    private static final String INSERT = """
+            INSERT INTO listening_events (user_id, track_id, played_at, context_type)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String CREATE_PARTITION = """
+            CREATE TABLE IF NOT EXISTS %s PARTITION OF listening_events
+            FOR VALUES FROM ('%s') TO ('%s')
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final Set<YearMonth> knownPartitions = ConcurrentHashMap.newKeySet();
+
+    public ListeningEventStore(JdbcTemplate jdbcTemplate,
+                               @Value("${listening.insert-batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void append(Collection<ListeningEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        Set<YearMonth> months = new TreeSet<>();
+        for (ListeningEvent event : events) {
+            months.add(YearMonth.from(event.playedAt().atOffset(ZoneOffset.UTC)));
+        }
+        months.forEach(this::ensurePartition);
+
+        // JDBC batches; the driver rewrites each into multi-row INSERTs (reWriteBatchedInserts)
+        jdbcTemplate.batchUpdate(INSERT, events, batchSize, (ps, event) -> {
+            ps.setInt(1, event.userId());
+            ps.setInt(2, event.trackId());
+            ps.setObject(3, OffsetDateTime.ofInstant(event.playedAt(), ZoneOffset.UTC));
+            ps.setString(4, event.contextType());
+        });
+    }
+
+    private void ensurePartition(YearMonth month) {
+        if (knownPartitions.contains(month)) {
+            return;
+        }
+        String name = "listening_events_%d_%02d".formatted(month.getYear(), month.getMonthValue());
+        Instant from = month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant to = month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        try {
+            jdbcTemplate.execute(CREATE_PARTITION.formatted(name, from, to));
+        } catch (DataAccessException e) {
+            // Another node can win the race between IF NOT EXISTS and the create; that's fine if the table is there now
+            if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name) != Boolean.TRUE) {
+                throw e;
+            }
+        }
+        knownPartitions.add(month);
+    }
+}
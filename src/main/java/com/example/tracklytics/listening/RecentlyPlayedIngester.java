@@ -0,0 +1,230 @@
+package com.example.tracklytics.listening;
+
+import com.example.tracklytics.cluster.ClusterMembership;
+import com.example.tracklytics.spotify.SpotifyClient;
+import com.example.tracklytics.spotify.SpotifyPlay;
+import com.example.tracklytics.spotify.SpotifyRecentlyPlayed;
+import com.example.tracklytics.spotify.SpotifyResponseDecoder;
+import com.example.tracklytics.spotify.SpotifyTrack;
+import com.example.tracklytics.track.Track;
+import com.example.tracklytics.track.TrackService;
+import com.example.tracklytics.user.RecentlyPlayedCursor;
+import com.example.tracklytics.user.UserService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Polls /me/player/recently-played for this node's users from each user's stored "after" cursor and appends
+// only the new plays to listening_events. A poll that finds nothing new costs the keyset page read and no writes.
+// Polls are paced to their own request budget below the shared Spotify limit, so ingestion can't starve syncs.
+@Service
+public class RecentlyPlayedIngester {
+
+    private static final String RECENTLY_PLAYED_URL = "https://api.spotify.com/v1/me/player/recently-played?limit=50";
+    private static final int PAGE_LIMIT = 50;
+
+    private final SpotifyClient spotifyClient;
+    private final SpotifyResponseDecoder responseDecoder;
+    private final TrackService trackService;
+    private final UserService userService;
+    private final ListeningEventStore listeningEventStore;
+    private final ClusterMembership clusterMembership;
+    private final int maxConcurrency;
+    private final int maxPages;
+    private final long pollSpacingNanos;
+    private final Duration idleAfter;
+    private final int idlePollEvery;
+    private final Counter emptyPolls;
+    private final Counter ingestingPolls;
+    private final Counter failedPolls;
+    private final Counter skippedPolls;
+    private final Counter appendedEvents;
+
+    // Only touched from pollAll(), which never overlaps itself
+    private long passes;
+
+    public RecentlyPlayedIngester(SpotifyClient spotifyClient, SpotifyResponseDecoder responseDecoder,
+                                  TrackService trackService, UserService userService,
+                                  ListeningEventStore listeningEventStore, ClusterMembership clusterMembership,
+                                  @Value("${listening.max-concurrency:8}") int maxConcurrency,
+                                  @Value("${listening.max-pages-per-poll:4}") int maxPages,
+                                  @Value("${listening.polls-per-second:3}") double pollsPerSecond,
+                                  @Value("${listening.idle-after-hours:24}") long idleAfterHours,
+                                  @Value("${listening.idle-poll-every:8}") int idlePollEvery,
+                                  MeterRegistry meterRegistry) {
+        this.spotifyClient = spotifyClient;
+        this.responseDecoder = responseDecoder;
+        this.trackService = trackService;
+        this.userService = userService;
+        this.listeningEventStore = listeningEventStore;
+        this.clusterMembership = clusterMembership;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxPages = Math.max(1, maxPages);
+        this.pollSpacingNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(0.01, pollsPerSecond));
+        this.idleAfter = Duration.ofHours(Math.max(1, idleAfterHours));
+        this.idlePollEvery = Math.max(1, idlePollEvery);
+
+        this.emptyPolls = pollCounter(meterRegistry, "empty");
+        this.ingestingPolls = pollCounter(meterRegistry, "ingested");
+        this.failedPolls = pollCounter(meterRegistry, "failed");
+        this.skippedPolls = pollCounter(meterRegistry, "skipped");
+        this.appendedEvents = Counter.builder("tracklytics.listening.events")
+                .description("Plays appended to listening_events")
+                .register(meterRegistry);
+    }
+
+    private static Counter pollCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("tracklytics.listening.polls")
+                .description("Recently-played polls per user, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    // Spotify only keeps the last 50 plays, so the interval has to stay well under the time a user needs to play 50 tracks
+    @Scheduled(fixedDelayString = "${listening.poll-interval-ms:900000}", initialDelayString = "${listening.initial-delay-ms:60000}")
+    public void pollAll() {
+        long started = System.nanoTime();
+        long pass = passes++;
+        long nextStart = started;
+        AtomicInteger users = new AtomicInteger();
+        AtomicInteger appended = new AtomicInteger();
+        Semaphore permits = new Semaphore(maxConcurrency);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<RecentlyPlayedCursor> page : userService.recentlyPlayedCursorPages()) {
+                for (RecentlyPlayedCursor user : page) {
+                    if (!clusterMembership.owns(user.id())) {
+                        continue;
+                    }
+                    if (!worthPolling(user, pass, Instant.now())) {
+                        skippedPolls.increment();
+                        continue;
+                    }
+                    // One poll start per spacing interval; falling behind doesn't earn a burst afterwards
+                    long wait = nextStart - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    nextStart = Math.max(nextStart, System.nanoTime()) + pollSpacingNanos;
+                    // Acquire before submitting so we don't park one virtual thread per user up front
+                    permits.acquire();
+                    users.incrementAndGet();
+                    executor.submit(() -> {
+                        try {
+                            appended.addAndGet(ingest(user));
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Recently played poll interrupted after " + users.get() + " users");
+        } catch (Exception e) {
+            System.err.println("Error polling recently played: " + e.getMessage());
+        }
+
+        if (appended.get() > 0) {
+            System.out.println("Recently played poll - " + appended.get() + " new plays from " + users.get() + " users in " +
+                    (System.nanoTime() - started) / 1_000_000 + "ms");
+        }
+    }
+
+    // An expired token can only earn a 401, and a user idle for idle-after is only polled on every
+    // idle-poll-every'th pass (staggered by id so the idle polls spread evenly over the passes)
+    private boolean worthPolling(RecentlyPlayedCursor user, long pass, Instant now) {
+        if (user.tokenExpiry() != null && !user.tokenExpiry().isAfter(now)) {
+            return false;
+        }
+        boolean idle = user.after() != null && user.after() < now.minus(idleAfter).toEpochMilli();
+        return !idle || (pass + user.id()) % idlePollEvery == 0;
+    }
+
+    // Returns the number of plays appended
+    private int ingest(RecentlyPlayedCursor user) {
+        Long after = user.after();
+        int appended = 0;
+        try {
+            for (int page = 0; page < maxPages; page++) {
+                String url = after != null ? RECENTLY_PLAYED_URL + "&after=" + after : RECENTLY_PLAYED_URL;
+                SpotifyRecentlyPlayed played = responseDecoder.decodeRecentlyPlayed(spotifyClient.get(url, user.accessToken()).join());
+                if (played.items().isEmpty()) {
+                    break;
+                }
+
+                Map<String, Integer> trackIds = resolveTrackIds(played.items());
+
+                List<ListeningEvent> events = new ArrayList<>(played.items().size());
+                long newest = after != null ? after : Long.MIN_VALUE;
+                for (SpotifyPlay play : played.items()) {
+                    events.add(new ListeningEvent(user.id(), trackIds.get(play.track().id()), play.playedAt(), play.contextType()));
+                    newest = Math.max(newest, play.playedAt().toEpochMilli());
+                }
+                listeningEventStore.append(events);
+
+                // Advanced only once the rows are in; if we die in between, the re-read plays hit the primary key
+                after = played.afterCursor() != null ? Math.max(played.afterCursor(), newest) : newest;
+                userService.advanceRecentlyPlayedCursor(user.id(), after);
+                appended += events.size();
+
+                if (played.items().size() < PAGE_LIMIT) {
+                    break;
+                }
+            }
+            (appended > 0 ? ingestingPolls : emptyPolls).increment();
+        } catch (RuntimeException e) {
+            // Pages appended before the failure stay in, and the cursor already covers them
+            failedPolls.increment();
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            System.err.println("Failed to ingest recently played for user " + user.spotifyId() + ": " + cause.getMessage());
+        }
+        appendedEvents.increment(appended);
+        return appended;
+    }
+
+    // Plays mostly repeat tracks the catalog already has. Only unknown tracks are upserted, so polling never
+    // rewrites existing catalog rows (the popularity in a play would otherwise keep churning them).
+    private Map<String, Integer> resolveTrackIds(List<SpotifyPlay> plays) {
+        Set<String> spotifyIds = new HashSet<>();
+        for (SpotifyPlay play : plays) {
+            spotifyIds.add(play.track().id());
+        }
+        Map<String, Integer> trackIds = new HashMap<>(trackService.findIdsBySpotifyId(spotifyIds));
+
+        List<Track> unknown = new ArrayList<>();
+        for (SpotifyPlay play : plays) {
+            if (!trackIds.containsKey(play.track().id()) && spotifyIds.remove(play.track().id())) {
+                unknown.add(trackFromSpotifyData(play.track()));
+            }
+        }
+        if (!unknown.isEmpty()) {
+            trackIds.putAll(trackService.upsertAllBySpotifyId(unknown));
+        }
+        return trackIds;
+    }
+
+    private Track trackFromSpotifyData(SpotifyTrack trackData) {
+        Track track = new Track(trackData.id(), trackData.name(), trackData.albumName());
+        track.setDurationMs(trackData.durationMs());
+        track.setPopularity(trackData.popularity());
+        return track;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.tracklytics.spotify;
+
+public class SpotifyApiException extends RuntimeException {
+
+    private final int statusCode;
+
+    public SpotifyApiException(int statusCode, String message) {
+        super("Spotify API returned " + statusCode + ": " + message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
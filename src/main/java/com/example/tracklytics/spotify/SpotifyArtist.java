@@ -0,0 +1,7 @@
+package com.example.tracklytics.spotify;
+
+import java.util.List;
+
+// The parts of a Spotify artist object we persist
+public record SpotifyArtist(String id, String name, Integer popularity, List<String> genres) {
+}
@@ -0,0 +1,6 @@
+package com.example.tracklytics.spotify;
+
+// The parts of a Spotify audio-features object we use
+public record SpotifyAudioFeatures(String id, Double danceability, Double energy, Double valence,
+                                   Double acousticness, Double tempo) {
+}
@@ -0,0 +1,153 @@
+package com.example.tracklytics.spotify;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Pooled, HTTP/2-capable async client for the Spotify Web API; every request goes through the shared rate limiter
+@Component
+public class SpotifyClient implements DisposableBean {
+
+    private final SpotifyRateLimiter rateLimiter;
+    private final int maxRateLimitRetries;
+    private final Duration totalTimeout;
+    private final PoolingAsyncClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient httpClient;
+
+    public SpotifyClient(SpotifyRateLimiter rateLimiter,
+                         @Value("${spotify.rate-limit.max-retries:5}") int maxRateLimitRetries,
+                         @Value("${spotify.http.connect-timeout-ms:2000}") long connectTimeoutMs,
+                         @Value("${spotify.http.read-timeout-ms:10000}") long readTimeoutMs,
+                         @Value("${spotify.http.pool-timeout-ms:5000}") long poolTimeoutMs,
+                         @Value("${spotify.http.total-timeout-ms:60000}") long totalTimeoutMs,
+                         @Value("${spotify.http.max-connections:64}") int maxConnections,
+                         MeterRegistry meterRegistry) {
+        this.rateLimiter = rateLimiter;
+        this.maxRateLimitRetries = maxRateLimitRetries;
+        this.totalTimeout = Duration.ofMillis(totalTimeoutMs);
+
+        this.connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                // Negotiate HTTP/2 over ALPN and multiplex requests over the pooled connections
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                        .build())
+                .setMessageMultiplexing(true)
+                .build();
+
+        this.httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+        this.httpClient.start();
+
+        // httpcomponents.client.pool.* gauges (leased, available, pending, max)
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "spotify").bindTo(meterRegistry);
+    }
+
+    // GETs the url and completes with the response body; 429s are retried, other 4xx/5xx fail with SpotifyApiException
+    // The total timeout starts once the first permit is granted, so time queued behind our own limiter doesn't count
+    public CompletableFuture<byte[]> get(String url, String accessToken) {
+        return afterPermit()
+                .thenCompose(ignored -> send(url, accessToken, 1).orTimeout(totalTimeout.toMillis(), TimeUnit.MILLISECONDS))
+                .thenApply(SimpleHttpResponse::getBodyBytes);
+    }
+
+    // Completes when a reserved permit may be used; a 429 pause that began while waiting invalidates the slot
+    private CompletableFuture<Void> afterPermit() {
+        Duration wait = rateLimiter.reserve();
+        if (wait.isZero()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return delay(wait).thenCompose(ignored -> rateLimiter.isPaused() ? afterPermit() : CompletableFuture.completedFuture(null));
+    }
+
+    private CompletableFuture<SimpleHttpResponse> send(String url, String accessToken, int attempt) {
+        SimpleHttpRequest request = SimpleRequestBuilder.get(url)
+                .setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                .build();
+
+        CompletableFuture<SimpleHttpResponse> response = new CompletableFuture<>();
+        httpClient.execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse result) {
+                response.complete(result);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                response.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                response.cancel(false);
+            }
+        });
+
+        return response.thenCompose(result -> {
+            if (result.getCode() == 429) {
+                Header retryAfterHeader = result.getFirstHeader(HttpHeaders.RETRY_AFTER);
+                Duration retryAfter = SpotifyRateLimiter.parseRetryAfter(retryAfterHeader != null ? retryAfterHeader.getValue() : null);
+                rateLimiter.onRateLimited(retryAfter);
+
+                if (attempt > maxRateLimitRetries) {
+                    return CompletableFuture.failedFuture(new SpotifyApiException(429, "rate limited after " + attempt + " attempts"));
+                }
+
+                // The retry waits out the backoff, then the pause and a fresh slot from the limiter
+                System.out.println("Spotify rate limited " + url + " (Retry-After " + retryAfter.toMillis() +
+                        "ms) - retrying after backoff and the pause (attempt " + attempt + ")");
+                return delay(rateLimiter.backoff(attempt))
+                        .thenCompose(ignored -> afterPermit())
+                        .thenCompose(ignored -> send(url, accessToken, attempt + 1));
+            }
+            if (result.getCode() >= 400) {
+                return CompletableFuture.failedFuture(new SpotifyApiException(result.getCode(), result.getBodyText()));
+            }
+            return CompletableFuture.completedFuture(result);
+        });
+    }
+
+    private static CompletableFuture<Void> delay(Duration duration) {
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(duration.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void destroy() {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.tracklytics.spotify;
+
+import java.time.Instant;
+
+public record SpotifyPlay(SpotifyTrack track, Instant playedAt, String contextType) {
+}
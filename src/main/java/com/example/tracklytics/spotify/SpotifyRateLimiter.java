@@ -0,0 +1,169 @@
+package com.example.tracklytics.spotify;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One token bucket shared by every outgoing Spotify Web API call in this process
+@Component
+public class SpotifyRateLimiter {
+
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final double capacity;
+    private final double permitsPerNano;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+
+    // ReentrantLock rather than synchronized so virtual threads never pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private double availablePermits;
+    private long lastRefillNanos;
+    private long blockedUntilNanos;
+
+    private final Counter throttledCounter;
+
+    public SpotifyRateLimiter(@Value("${spotify.rate-limit.permits-per-second:10}") double permitsPerSecond,
+                              @Value("${spotify.rate-limit.burst:10}") int burst,
+                              @Value("${spotify.rate-limit.base-backoff-ms:500}") long baseBackoffMs,
+                              @Value("${spotify.rate-limit.max-backoff-ms:30000}") long maxBackoffMs,
+                              MeterRegistry meterRegistry) {
+        this.capacity = Math.max(1, burst);
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.baseBackoffNanos = TimeUnit.MILLISECONDS.toNanos(baseBackoffMs);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMs);
+        this.availablePermits = capacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.blockedUntilNanos = lastRefillNanos;
+
+        Gauge.builder("spotify.ratelimit.permits", this, SpotifyRateLimiter::getAvailablePermits)
+                .description("Spotify API permits currently available in the token bucket; negative when callers have reserved ahead")
+                .register(meterRegistry);
+        Gauge.builder("spotify.ratelimit.wait", this, limiter -> limiter.getCurrentWait().toMillis())
+                .description("Time a new Spotify API call would currently wait for a permit")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.throttledCounter = Counter.builder("spotify.ratelimit.throttled")
+                .description("Spotify API responses rejected with 429 Too Many Requests")
+                .register(meterRegistry);
+    }
+
+    // Reserves a permit and returns how long to wait before using it; the bucket goes negative so that
+    // callers queued behind an empty bucket are handed successive slots instead of all waking together
+    public Duration reserve() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            long wait = waitNanos(now);
+            availablePermits -= 1;
+            return Duration.ofNanos(wait);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // True while a Retry-After pause is in effect; reservations made before the pause started must be renewed
+    public boolean isPaused() {
+        lock.lock();
+        try {
+            return blockedUntilNanos - System.nanoTime() > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Pauses every caller until Spotify's Retry-After has elapsed and drains the bucket. Outstanding reservations
+    // stay as debt, so slots handed out after the pause queue behind the ones already promised.
+    public void onRateLimited(Duration retryAfter) {
+        throttledCounter.increment();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            long until = now + retryAfter.toNanos();
+            if (until - blockedUntilNanos > 0) {
+                blockedUntilNanos = until;
+            }
+            // refill() starts accruing again at blockedUntilNanos
+            availablePermits = Math.min(availablePermits, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Exponential backoff with full jitter so throttled callers don't all retry at the same instant
+    public Duration backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 20));
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    // Retry-After is either delta-seconds or an HTTP-date; fall back to one second if missing or unparseable
+    public static Duration parseRetryAfter(String headerValue) {
+        if (headerValue == null || headerValue.isBlank()) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(headerValue.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Instant retryAt = ZonedDateTime.parse(headerValue.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                Duration delay = Duration.between(Instant.now(), retryAt);
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return DEFAULT_RETRY_AFTER;
+            }
+        }
+    }
+
+    public double getAvailablePermits() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            return availablePermits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Duration getCurrentWait() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            return Duration.ofNanos(waitNanos(now));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long waitNanos(long now) {
+        long paused = Math.max(0, blockedUntilNanos - now);
+        if (availablePermits >= 1) {
+            return paused;
+        }
+        // Permits only start accruing again once the pause is over
+        return paused + (long) Math.ceil((1 - availablePermits) / permitsPerNano);
+    }
+
+    private void refill(long now) {
+        // Nothing accrues while a Retry-After pause is in effect
+        long from = blockedUntilNanos - lastRefillNanos > 0 ? blockedUntilNanos : lastRefillNanos;
+        long elapsed = now - from;
+        if (elapsed > 0) {
+            availablePermits = Math.min(capacity, availablePermits + elapsed * permitsPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
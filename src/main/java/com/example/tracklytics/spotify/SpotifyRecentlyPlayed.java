@@ -0,0 +1,7 @@
+package com.example.tracklytics.spotify;
+
+import java.util.List;
+
+// One page of /me/player/recently-played; afterCursor is the newest play's time in epoch millis, null when empty
+public record SpotifyRecentlyPlayed(List<SpotifyPlay> items, Long afterCursor) {
+}
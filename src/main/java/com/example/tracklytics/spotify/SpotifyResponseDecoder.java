@@ -0,0 +1,241 @@
+package com.example.tracklytics.spotify;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Token-level decoding of Spotify responses: reads only the fields we keep and skips everything else unbuilt
+@Component
+public class SpotifyResponseDecoder {
+
+    private final JsonFactory jsonFactory;
+
+    public SpotifyResponseDecoder(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    // Returns null if the response has no "items" array
+    public List<SpotifyTrack> decodeTopTracks(byte[] body) {
+        return decodeItems(body, this::readTrack);
+    }
+
+    // Returns null if the response has no "items" array
+    public List<SpotifyArtist> decodeTopArtists(byte[] body) {
+        return decodeItems(body, this::readArtist);
+    }
+
+    public SpotifyAudioFeatures decodeAudioFeatures(byte[] body) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expectObject(parser.nextToken());
+
+            String id = null;
+            Double danceability = null, energy = null, valence = null, acousticness = null, tempo = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "id" -> id = textOrNull(parser);
+                    case "danceability" -> danceability = doubleOrNull(parser);
+                    case "energy" -> energy = doubleOrNull(parser);
+                    case "valence" -> valence = doubleOrNull(parser);
+                    case "acousticness" -> acousticness = doubleOrNull(parser);
+                    case "tempo" -> tempo = doubleOrNull(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new SpotifyAudioFeatures(id, danceability, energy, valence, acousticness, tempo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed Spotify audio features response", e);
+        }
+    }
+
+    public SpotifyRecentlyPlayed decodeRecentlyPlayed(byte[] body) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expectObject(parser.nextToken());
+
+            List<SpotifyPlay> items = new ArrayList<>();
+            Long afterCursor = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                    JsonToken token;
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == JsonToken.START_OBJECT) {
+                            SpotifyPlay play = readPlay(parser);
+                            if (play.track() != null && play.track().id() != null && play.playedAt() != null) {
+                                items.add(play);
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if ("cursors".equals(field) && value == JsonToken.START_OBJECT) {
+                    afterCursor = readAfterCursor(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new SpotifyRecentlyPlayed(items, afterCursor);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed Spotify recently played response", e);
+        }
+    }
+
+    private <T> List<T> decodeItems(byte[] body, ItemReader<T> itemReader) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            expectObject(parser.nextToken());
+
+            List<T> items = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                    items = new ArrayList<>();
+                    JsonToken token;
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == JsonToken.START_OBJECT) {
+                            items.add(itemReader.read(parser));
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return items;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed Spotify response", e);
+        }
+    }
+
+    private SpotifyTrack readTrack(JsonParser parser) throws IOException {
+        String id = null, name = null, albumName = null;
+        Integer durationMs = null, popularity = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = textOrNull(parser);
+                case "name" -> name = textOrNull(parser);
+                case "duration_ms" -> durationMs = intOrNull(parser);
+                case "popularity" -> popularity = intOrNull(parser);
+                case "album" -> albumName = value == JsonToken.START_OBJECT ? readField(parser, "name") : null;
+                default -> parser.skipChildren();
+            }
+        }
+        return new SpotifyTrack(id, name, albumName, durationMs, popularity);
+    }
+
+    private SpotifyArtist readArtist(JsonParser parser) throws IOException {
+        String id = null, name = null;
+        Integer popularity = null;
+        List<String> genres = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = textOrNull(parser);
+                case "name" -> name = textOrNull(parser);
+                case "popularity" -> popularity = intOrNull(parser);
+                case "genres" -> genres = value == JsonToken.START_ARRAY ? readStrings(parser) : null;
+                default -> parser.skipChildren();
+            }
+        }
+        return new SpotifyArtist(id, name, popularity, genres);
+    }
+
+    private SpotifyPlay readPlay(JsonParser parser) throws IOException {
+        SpotifyTrack track = null;
+        String playedAt = null, contextType = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "track" -> track = value == JsonToken.START_OBJECT ? readTrack(parser) : null;
+                case "played_at" -> playedAt = textOrNull(parser);
+                case "context" -> contextType = value == JsonToken.START_OBJECT ? readField(parser, "type") : null;
+                default -> parser.skipChildren();
+            }
+        }
+        return new SpotifyPlay(track, playedAt != null ? Instant.parse(playedAt) : null, contextType);
+    }
+
+    // Spotify sends the cursors as strings of epoch millis
+    private Long readAfterCursor(JsonParser parser) throws IOException {
+        String after = readField(parser, "after");
+        return after != null && !after.isBlank() ? Long.valueOf(after) : null;
+    }
+
+    // Reads one scalar field from a nested object (e.g. a track's album name) and skips the rest of it
+    private String readField(JsonParser parser, String wanted) throws IOException {
+        String result = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (wanted.equals(field)) {
+                result = textOrNull(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    private List<String> readStrings(JsonParser parser) throws IOException {
+        List<String> values = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_STRING) {
+                values.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+
+    private String textOrNull(JsonParser parser) throws IOException {
+        if (parser.currentToken().isScalarValue()) {
+            return parser.getValueAsString();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private Integer intOrNull(JsonParser parser) throws IOException {
+        if (parser.currentToken().isNumeric()) {
+            return parser.getIntValue();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private Double doubleOrNull(JsonParser parser) throws IOException {
+        if (parser.currentToken().isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private void expectObject(JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object but found " + token);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ItemReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+}
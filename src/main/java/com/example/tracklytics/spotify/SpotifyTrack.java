@@ -0,0 +1,5 @@
+package com.example.tracklytics.spotify;
+
+// The parts of a Spotify track object we persist
+public record SpotifyTrack(String id, String name, String albumName, Integer durationMs, Integer popularity) {
+}
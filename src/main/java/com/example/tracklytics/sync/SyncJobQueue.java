@@ -0,0 +1,137 @@
+package com.example.tracklytics.sync;
+
+import com.example.tracklytics.cluster.HashRing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+// The sync_jobs table as a work queue. Every statement is a single atomic UPDATE/INSERT, so any number
+// of nodes can enqueue and claim concurrently; SKIP LOCKED keeps two workers off the same row.
+@Component
+public class SyncJobQueue {
+
+    // True when the user id's ring hash falls in one of the (from, to] arcs bound as two bigint[] parameters
+    private static final String IN_SHARD = """
+            EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::bigint[]) AS arc(lo, hi)
+                    WHERE %1$s > arc.lo AND %1$s <= arc.hi)""";
+
+    // Users in this node's shard with a live token and no sync within minSyncAge. The due test is written as the
+    // exact expression indexed by users_sync_due_at_idx (schema.sql) so the planner can match it.
+    // Rows already PENDING or RUNNING are left alone, so overlapping shards during a rebalance are harmless;
+    // DEAD rows get a fresh set of attempts once they have been dead for the cool-down.
+    private static final String ENQUEUE_DUE = """
+            INSERT INTO sync_jobs (user_id, status, run_after, attempts)
+            SELECT u.id, 'PENDING', now(), 0
+            FROM users u
+            WHERE u.access_token IS NOT NULL
+              AND COALESCE(u.last_sync_time, '-infinity') < now() - (? * interval '1 second')
+              AND (u.token_expiry IS NULL OR u.token_expiry > now())
+              AND %s
+            ON CONFLICT (user_id) DO UPDATE SET
+                status = 'PENDING',
+                run_after = now(),
+                attempts = 0,
+                last_error = NULL,
+                lease_until = NULL,
+                leased_by = NULL,
+                updated_at = now()
+            WHERE sync_jobs.status = 'DONE'
+               OR (sync_jobs.status = 'DEAD' AND sync_jobs.updated_at < now() - (? * interval '1 second'))
+            """.formatted(IN_SHARD.formatted(HashRing.USER_HASH_SQL.formatted("u.id")));
+
+    // A fresh login means whatever killed the job (usually a revoked token) may be gone
+    private static final String REVIVE_DEAD = """
+            UPDATE sync_jobs j SET status = 'PENDING', run_after = now(), attempts = 0, last_error = NULL, updated_at = now()
+            FROM users u
+            WHERE u.id = j.user_id AND u.spotify_id = ? AND j.status = 'DEAD'
+            """;
+
+    // Leases that ran out with no attempts left are dead-lettered before claiming; any node may do this
+    private static final String BURY_EXPIRED = """
+            UPDATE sync_jobs SET status = 'DEAD', lease_until = NULL, leased_by = NULL,
+                last_error = COALESCE(last_error, 'lease expired'), updated_at = now()
+            WHERE status = 'RUNNING' AND lease_until < now() AND attempts >= ?
+            """;
+
+    private static final String CLAIM = """
+            UPDATE sync_jobs j SET
+                status = 'RUNNING',
+                leased_by = ?,
+                lease_until = now() + (? * interval '1 second'),
+                attempts = j.attempts + 1,
+                updated_at = now()
+            WHERE j.user_id IN (
+                SELECT user_id FROM sync_jobs
+                WHERE ((status = 'PENDING' AND run_after <= now())
+                    OR (status = 'RUNNING' AND lease_until < now()))
+                  AND %s
+                ORDER BY run_after
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING j.user_id, j.attempts
+            """.formatted(IN_SHARD.formatted(HashRing.USER_HASH_SQL.formatted("user_id")));
+
+    // Completion only lands if we still hold the lease; a reclaimed job belongs to its new worker
+    private static final String COMPLETE = """
+            UPDATE sync_jobs SET status = 'DONE', lease_until = NULL, leased_by = NULL, last_error = NULL, updated_at = now()
+            WHERE user_id = ? AND status = 'RUNNING' AND leased_by = ?
+            """;
+
+    private static final String RETRY = """
+            UPDATE sync_jobs SET status = 'PENDING', run_after = now() + (? * interval '1 second'),
+                lease_until = NULL, leased_by = NULL, last_error = ?, updated_at = now()
+            WHERE user_id = ? AND status = 'RUNNING' AND leased_by = ?
+            """;
+
+    private static final String BURY = """
+            UPDATE sync_jobs SET status = 'DEAD', lease_until = NULL, leased_by = NULL, last_error = ?, updated_at = now()
+            WHERE user_id = ? AND status = 'RUNNING' AND leased_by = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration deadCooldown;
+
+    public SyncJobQueue(JdbcTemplate jdbcTemplate,
+                        @Value("${sync.queue.dead-cooldown-hours:24}") long deadCooldownHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.deadCooldown = Duration.ofHours(Math.max(1, deadCooldownHours));
+    }
+
+    public record ClaimedJob(int userId, int attempts) {
+    }
+
+    public int enqueueDueUsers(Duration minSyncAge, HashRing.Arcs shard) {
+        return jdbcTemplate.update(ENQUEUE_DUE, minSyncAge.toSeconds(), shard.from(), shard.to(), deadCooldown.toSeconds());
+    }
+
+    public boolean reviveDead(String spotifyId) {
+        return jdbcTemplate.update(REVIVE_DEAD, spotifyId) == 1;
+    }
+
+    public int buryExpired(int maxAttempts) {
+        return jdbcTemplate.update(BURY_EXPIRED, maxAttempts);
+    }
+
+    // Claims only jobs in shard; a dead node's jobs move with its arcs once its heartbeat times out
+    public List<ClaimedJob> claim(String workerId, Duration lease, int limit, HashRing.Arcs shard) {
+        return jdbcTemplate.query(CLAIM,
+                (rs, row) -> new ClaimedJob(rs.getInt("user_id"), rs.getInt("attempts")),
+                workerId, lease.toSeconds(), shard.from(), shard.to(), limit);
+    }
+
+    public boolean complete(int userId, String workerId) {
+        return jdbcTemplate.update(COMPLETE, userId, workerId) == 1;
+    }
+
+    public boolean retry(int userId, String workerId, Duration delay, String error) {
+        return jdbcTemplate.update(RETRY, delay.toSeconds(), error, userId, workerId) == 1;
+    }
+
+    public boolean bury(int userId, String workerId, String error) {
+        return jdbcTemplate.update(BURY, error, userId, workerId) == 1;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.tracklytics.sync;
+
+import com.example.tracklytics.cluster.ClusterMembership;
+import com.example.tracklytics.user.UserService;
+import com.example.tracklytics.user.UserSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Drains this node's shard of sync_jobs. Each batch is leased to this worker, so a user is synced by exactly one
+// node at a time; a worker that dies mid-batch just lets its leases run out for the shard's next owner to pick up.
+@Service
+public class SyncQueueWorker {
+
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(6);
+
+    private final SyncJobQueue syncJobQueue;
+    private final UserService userService;
+    private final UserSyncEngine userSyncEngine;
+    private final ClusterMembership clusterMembership;
+    private final String workerId;
+    private final int batchSize;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+
+    public SyncQueueWorker(SyncJobQueue syncJobQueue,
+                           UserService userService,
+                           UserSyncEngine userSyncEngine,
+                           ClusterMembership clusterMembership,
+                           @Value("${sync.queue.batch-size:32}") int batchSize,
+                           @Value("${sync.queue.lease-seconds:300}") long leaseSeconds,
+                           @Value("${sync.queue.max-attempts:5}") int maxAttempts,
+                           @Value("${sync.queue.retry-delay-seconds:60}") long retryDelaySeconds) {
+        this.syncJobQueue = syncJobQueue;
+        this.userService = userService;
+        this.userSyncEngine = userSyncEngine;
+        this.clusterMembership = clusterMembership;
+        this.workerId = clusterMembership.nodeId();
+        this.batchSize = Math.max(1, batchSize);
+        this.lease = Duration.ofSeconds(Math.max(1, leaseSeconds));
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelay = Duration.ofSeconds(Math.max(1, retryDelaySeconds));
+    }
+
+    @Scheduled(fixedDelayString = "${sync.queue.poll-interval-ms:10000}")
+    public void poll() {
+        try {
+            int buried = syncJobQueue.buryExpired(maxAttempts);
+            if (buried > 0) {
+                System.err.println("Dead-lettered " + buried + " sync jobs whose last lease expired");
+            }
+
+            long succeeded = 0, failed = 0;
+            List<SyncJobQueue.ClaimedJob> claimed;
+            // Re-read the arcs per batch so a rebalance takes effect mid-drain
+            while (!(claimed = syncJobQueue.claim(workerId, lease, batchSize, clusterMembership.ownedArcs())).isEmpty()) {
+                SyncReport report = runBatch(claimed);
+                succeeded += report.succeeded();
+                failed += report.failed();
+            }
+
+            if (succeeded + failed > 0) {
+                System.out.println("Sync worker " + workerId + " finished " + succeeded + " jobs, " + failed + " failed");
+            }
+        } catch (Exception e) {
+            System.err.println("Error draining sync queue: " + e.getMessage());
+        }
+    }
+
+    private SyncReport runBatch(List<SyncJobQueue.ClaimedJob> claimed) {
+        Map<Integer, Integer> attemptsByUserId = new HashMap<>();
+        for (SyncJobQueue.ClaimedJob job : claimed) {
+            attemptsByUserId.put(job.userId(), job.attempts());
+        }
+
+        List<UserSummary> users = userService.findSummariesByIds(attemptsByUserId.keySet());
+        Map<String, Integer> userIdBySpotifyId = new HashMap<>();
+        for (UserSummary user : users) {
+            userIdBySpotifyId.put(user.spotifyId(), user.id());
+        }
+
+        // Claimed ids with no user row left have nothing to sync
+        for (Integer userId : attemptsByUserId.keySet()) {
+            if (!userIdBySpotifyId.containsValue(userId)) {
+                syncJobQueue.complete(userId, workerId);
+            }
+        }
+
+        // A user the engine returned no result for (interrupted mid-batch) keeps its lease and is reclaimed when it runs out
+        SyncReport report = userSyncEngine.syncUsers(users);
+        for (UserSyncResult result : report.results()) {
+            int userId = userIdBySpotifyId.get(result.spotifyId());
+            if (result.success()) {
+                syncJobQueue.complete(userId, workerId);
+            } else {
+                fail(userId, attemptsByUserId.get(userId), result.error());
+            }
+        }
+        return report;
+    }
+
+    private void fail(int userId, int attempts, String error) {
+        if (attempts >= maxAttempts) {
+            syncJobQueue.bury(userId, workerId, error);
+            System.err.println("Sync job for user " + userId + " dead-lettered after " + attempts + " attempts: " + error);
+        } else {
+            syncJobQueue.retry(userId, workerId, retryDelay(attempts), error);
+        }
+    }
+
+    // retry-delay, doubled per attempt and capped so a long outage doesn't push jobs out for days
+    private Duration retryDelay(int attempts) {
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : delay;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.tracklytics.sync;
+
+import java.time.Duration;
+import java.util.List;
+
+public record SyncReport(List<UserSyncResult> results, Duration elapsed) {
+
+    public int total() {
+        return results.size();
+    }
+
+    public long succeeded() {
+        return results.stream().filter(UserSyncResult::success).count();
+    }
+
+    public long failed() {
+        return total() - succeeded();
+    }
+
+    public long rowsAdded() {
+        return results.stream()
+                .mapToLong(result -> result.changes().tracks().added() + result.changes().artists().added())
+                .sum();
+    }
+
+    public long rowsRemoved() {
+        return results.stream()
+                .mapToLong(result -> result.changes().tracks().removed() + result.changes().artists().removed())
+                .sum();
+    }
+
+    public List<UserSyncResult> failures() {
+        return results.stream().filter(result -> !result.success()).toList();
+    }
+}
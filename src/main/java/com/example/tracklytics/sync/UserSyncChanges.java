@@ -0,0 +1,15 @@
+package com.example.tracklytics.sync;
+
+import com.example.tracklytics.user.TopListChange;
+
+// Join-table rows a single user sync inserted and deleted
+public record UserSyncChanges(TopListChange tracks, TopListChange artists) {
+
+    public static final UserSyncChanges NONE = new UserSyncChanges(TopListChange.NONE, TopListChange.NONE);
+
+    @Override
+    public String toString() {
+        return "tracks +" + tracks.added() + "/-" + tracks.removed() +
+                ", artists +" + artists.added() + "/-" + artists.removed();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.tracklytics.sync;
+
+import com.example.tracklytics.SpotifyApiService;
+import com.example.tracklytics.user.UserSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+@Service
+public class UserSyncEngine {
+
+    private final SpotifyApiService spotifyApiService;
+    private final int maxConcurrency;
+
+    public UserSyncEngine(SpotifyApiService spotifyApiService,
+                          @Value("${sync.max-concurrency:16}") int maxConcurrency) {
+        this.spotifyApiService = spotifyApiService;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    // Fans users out over virtual threads, never running more than maxConcurrency syncs at once.
+    // users is consumed lazily, so a paged source is only read as fast as permits free up.
+    public SyncReport syncUsers(Iterable<UserSummary> users) {
+        long started = System.nanoTime();
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<Future<UserSyncResult>> futures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (UserSummary user : users) {
+                // Acquire before submitting so we don't park one virtual thread per user up front
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        return syncUser(user);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Sync pass interrupted after submitting " + futures.size() + " users");
+        }
+
+        List<UserSyncResult> results = new ArrayList<>(futures.size());
+        for (Future<UserSyncResult> future : futures) {
+            // Executor is closed, so every submitted task has finished by now
+            results.add(future.resultNow());
+        }
+
+        return new SyncReport(results, Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private UserSyncResult syncUser(UserSummary user) {
+        long started = System.nanoTime();
+        try {
+            System.out.println("Syncing data for user: " + user.displayName());
+            UserSyncChanges changes = spotifyApiService.syncUser(user);
+            return UserSyncResult.succeeded(user.spotifyId(), user.displayName(), changes,
+                    Duration.ofNanos(System.nanoTime() - started));
+        } catch (Exception e) {
+            System.err.println("Failed to sync user " + user.displayName() + ": " + e.getMessage());
+            return UserSyncResult.failed(user.spotifyId(), user.displayName(), e.getMessage(),
+                    Duration.ofNanos(System.nanoTime() - started));
+        }
+    }
+}
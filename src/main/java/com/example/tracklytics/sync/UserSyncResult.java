@@ -0,0 +1,15 @@
+package com.example.tracklytics.sync;
+
+import java.time.Duration;
+
+public record UserSyncResult(String spotifyId, String displayName, boolean success, String error,
+                             UserSyncChanges changes, Duration elapsed) {
+
+    public static UserSyncResult succeeded(String spotifyId, String displayName, UserSyncChanges changes, Duration elapsed) {
+        return new UserSyncResult(spotifyId, displayName, true, null, changes, elapsed);
+    }
+
+    public static UserSyncResult failed(String spotifyId, String displayName, String error, Duration elapsed) {
+        return new UserSyncResult(spotifyId, displayName, false, error, UserSyncChanges.NONE, elapsed);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.tracklytics.track;
 
 import com.example.tracklytics.artist.Artist;
+import com.example.tracklytics.ContentFingerprint;
 import jakarta.persistence.*;
 import java.util.HashSet;
 import java.util.Set;
@@ -9,8 +10,13 @@ import java.util.Set;
 @Table(name = "tracks")
 public class Track {
 
+    // Ids are handed out in blocks of this size; native upserts claim whole blocks too
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Pooled sequence (not IDENTITY) so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tracks_seq")
+    @SequenceGenerator(name = "tracks_seq", sequenceName = "tracks_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Integer id;
 
     @Column(nullable = false, unique = true)
@@ -23,6 +29,9 @@ public class Track {
     private Integer durationMs;
     private Integer popularity;
 
+    // ContentFingerprint of the mutable columns; the upsert skips the UPDATE when it hasn't changed
+    private Long fingerprint;
+
     @ManyToMany(mappedBy = "tracks")
     private Set<Artist> artists = new HashSet<>();
 
@@ -34,6 +43,16 @@ public class Track {
         this.albumName = albumName;
     }
 
+    public long computeFingerprint() {
+        return ContentFingerprint.of(name, albumName, durationMs, popularity);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void refreshFingerprint() {
+        this.fingerprint = computeFingerprint();
+    }
+
     // Getters and Setters
     public Integer getId() {
         return id;
@@ -86,5 +105,8 @@ public class Track {
     public void setArtists(Set<Artist> artists) {
         this.artists = artists;
     }
-}
 
+    public Long getFingerprint() {
+        return fingerprint;
+    }
+}
@@ -1,10 +1,24 @@
 package com.example.tracklytics.track;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
-public interface TrackRepository extends JpaRepository<Track, Integer> {
+public interface TrackRepository extends JpaRepository<Track, Integer>, TrackUpsertRepository {
 
     Optional<Track> findBySpotifyId(String spotifyId);
+
+    // Ranked top tracks for one of the user's time ranges, unnesting user_top_lists.item_ids in order
+    @Query(value = """
+            SELECT t.* FROM users u
+            JOIN user_top_lists l ON l.user_id = u.id
+            CROSS JOIN LATERAL unnest(l.item_ids) WITH ORDINALITY AS item(id, rank)
+            JOIN tracks t ON t.id = item.id
+            WHERE u.spotify_id = :spotifyId AND l.item_type = 'track' AND l.time_range = :timeRange
+            ORDER BY item.rank
+            """, nativeQuery = true)
+    List<Track> findTopForUser(@Param("spotifyId") String spotifyId, @Param("timeRange") String timeRange);
 }
@@ -1,8 +1,10 @@
 package com.example.tracklytics.track;
 
+import com.example.tracklytics.user.TimeRange;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.*;
 
 @Service
 public class TrackService {
@@ -21,6 +23,32 @@ public class TrackService {
         return trackRepository.save(track);
     }
 
+    // Upserts the rows with native INSERT ... ON CONFLICT, so concurrent syncs of the same track never collide.
+    // Returns spotifyId -> id; duplicates in the input are written once.
+    @Transactional
+    public Map<String, Integer> upsertAllBySpotifyId(Collection<Track> tracks) {
+        return trackRepository.upsertAll(tracks);
+    }
+
+    // Read-only lookup for callers that must not rewrite catalog rows they already have
+    public Map<String, Integer> findIdsBySpotifyId(Collection<String> spotifyIds) {
+        return trackRepository.findIdsBySpotifyId(spotifyIds);
+    }
+
+    // The join tables only need ids, so hand out references instead of loading the rows again
+    public Set<Track> referencesTo(Integer[] ids) {
+        Set<Track> references = new HashSet<>(ids.length);
+        for (Integer id : ids) {
+            references.add(trackRepository.getReferenceById(id));
+        }
+        return references;
+    }
+
+    // A user's top tracks for one time range, in Spotify's rank order
+    public List<Track> findTopForUser(String spotifyId, TimeRange range) {
+        return trackRepository.findTopForUser(spotifyId, range.apiValue());
+    }
+
     public boolean existsBySpotifyId(String spotifyId) {
         return trackRepository.findBySpotifyId(spotifyId).isPresent();
     }
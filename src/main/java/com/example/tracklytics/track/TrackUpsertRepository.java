@@ -0,0 +1,13 @@
+package com.example.tracklytics.track;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface TrackUpsertRepository {
+
+    // INSERT ... ON CONFLICT (spotify_id) DO UPDATE, one statement per batch; returns spotifyId -> id
+    Map<String, Integer> upsertAll(Collection<Track> tracks);
+
+    // spotifyId -> id for the tracks already in the catalog; unknown ids are left out
+    Map<String, Integer> findIdsBySpotifyId(Collection<String> spotifyIds);
+}
@@ -0,0 +1,140 @@
+package com.example.tracklytics.track;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+
+class TrackUpsertRepositoryImpl implements TrackUpsertRepository {
+
+    private static final String SELECT_EXISTING =
+            "SELECT id, spotify_id, fingerprint FROM tracks WHERE spotify_id = ANY (?)";
+
+    private static final String NEXT_ID_BLOCK = "SELECT nextval('tracks_seq')";
+
+    // The WHERE still guards rows a concurrent sync wrote after our lookup; those come back as not returned
+    private static final String UPSERT_PREFIX = """
+            INSERT INTO tracks (id, spotify_id, name, album_name, duration_ms, popularity, fingerprint)
+            VALUES %s
+            ON CONFLICT (spotify_id) DO UPDATE SET
+                name = EXCLUDED.name,
+                album_name = EXCLUDED.album_name,
+                duration_ms = EXCLUDED.duration_ms,
+                popularity = EXCLUDED.popularity,
+                fingerprint = EXCLUDED.fingerprint
+            WHERE tracks.fingerprint IS DISTINCT FROM EXCLUDED.fingerprint
+            RETURNING id, spotify_id, (xmax = 0) AS inserted
+            """;
+
+    private static final String VALUES_ROW = "(?::int, ?, ?, ?, ?::int, ?::int, ?::bigint)";
+
+    private static final String SELECT_IDS = "SELECT id, spotify_id FROM tracks WHERE spotify_id = ANY (?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Counter> writeCounters = new HashMap<>();
+
+    TrackUpsertRepositoryImpl(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (String outcome : List.of("inserted", "updated", "unchanged")) {
+            writeCounters.put(outcome, Counter.builder("tracklytics.catalog.writes")
+                    .description("Catalog rows seen by the upsert, by outcome; unchanged rows were skipped by fingerprint")
+                    .tag("entity", "track")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public Map<String, Integer> upsertAll(Collection<Track> tracks) {
+        // Dedupe (one VALUES row may only touch a row once) and sort so concurrent upserts lock rows in the same order
+        TreeMap<String, Track> bySpotifyId = new TreeMap<>();
+        for (Track track : tracks) {
+            bySpotifyId.put(track.getSpotifyId(), track);
+        }
+
+        if (bySpotifyId.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        // Known rows with a matching fingerprint need no write at all; the others keep their stored id
+        Map<String, Integer> ids = new HashMap<>();
+        Map<String, Integer> storedIds = new HashMap<>();
+        jdbcTemplate.query(SELECT_EXISTING, rs -> {
+            String spotifyId = rs.getString("spotify_id");
+            long fingerprint = rs.getLong("fingerprint");
+            if (!rs.wasNull() && fingerprint == bySpotifyId.get(spotifyId).computeFingerprint()) {
+                ids.put(spotifyId, rs.getInt("id"));
+                writeCounters.get("unchanged").increment();
+            } else {
+                storedIds.put(spotifyId, rs.getInt("id"));
+            }
+        }, (Object) bySpotifyId.keySet().toArray(new String[0]));
+
+        List<Track> batch = new ArrayList<>(Track.ID_ALLOCATION_SIZE);
+        for (Track track : bySpotifyId.values()) {
+            if (ids.containsKey(track.getSpotifyId())) {
+                continue;
+            }
+            batch.add(track);
+            if (batch.size() == Track.ID_ALLOCATION_SIZE) {
+                upsertBatch(batch, storedIds, ids);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            upsertBatch(batch, storedIds, ids);
+        }
+
+        // A row committed by a concurrent sync after our lookup can be skipped by the WHERE; look those up again
+        if (ids.size() < bySpotifyId.size()) {
+            String[] missing = bySpotifyId.keySet().stream().filter(id -> !ids.containsKey(id)).toArray(String[]::new);
+            jdbcTemplate.query(SELECT_IDS, rs -> {
+                ids.put(rs.getString("spotify_id"), rs.getInt("id"));
+                writeCounters.get("unchanged").increment();
+            }, (Object) missing);
+        }
+        return ids;
+    }
+
+    @Override
+    public Map<String, Integer> findIdsBySpotifyId(Collection<String> spotifyIds) {
+        Map<String, Integer> ids = new HashMap<>();
+        if (spotifyIds.isEmpty()) {
+            return ids;
+        }
+        jdbcTemplate.query(SELECT_IDS, rs -> {
+            ids.put(rs.getString("spotify_id"), rs.getInt("id"));
+        }, (Object) spotifyIds.toArray(new String[0]));
+        return ids;
+    }
+
+    // New rows take ids from one pooled block of tracks_seq (hi - 49 .. hi), the same contract Hibernate follows;
+    // the block is only drawn when the batch has new rows, so re-syncing a known catalog burns no ids
+    private void upsertBatch(List<Track> batch, Map<String, Integer> storedIds, Map<String, Integer> ids) {
+        int nextId = 0;
+        if (batch.stream().anyMatch(track -> !storedIds.containsKey(track.getSpotifyId()))) {
+            Long hi = jdbcTemplate.queryForObject(NEXT_ID_BLOCK, Long.class);
+            nextId = Math.toIntExact(hi - Track.ID_ALLOCATION_SIZE + 1);
+        }
+
+        String sql = UPSERT_PREFIX.formatted(String.join(", ", Collections.nCopies(batch.size(), VALUES_ROW)));
+        List<Object> params = new ArrayList<>(batch.size() * 7);
+        for (Track track : batch) {
+            // Known rows pass their own id only to satisfy NOT NULL; the conflict turns them into an update
+            Integer storedId = storedIds.get(track.getSpotifyId());
+            params.add(storedId != null ? storedId : nextId++);
+            params.add(track.getSpotifyId());
+            params.add(track.getName());
+            params.add(track.getAlbumName());
+            params.add(track.getDurationMs());
+            params.add(track.getPopularity());
+            params.add(track.computeFingerprint());
+        }
+
+        jdbcTemplate.query(sql, rs -> {
+            ids.put(rs.getString("spotify_id"), rs.getInt("id"));
+            writeCounters.get(rs.getBoolean("inserted") ? "inserted" : "updated").increment();
+        }, params.toArray());
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.tracklytics.user;
+
+import java.time.Instant;
+
+// What the recently-played poller needs per user; after is the stored cursor in epoch millis (null before the first poll)
+public record RecentlyPlayedCursor(Integer id, String spotifyId, String accessToken, Instant tokenExpiry, Long after) {
+}
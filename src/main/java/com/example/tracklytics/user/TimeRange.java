@@ -0,0 +1,35 @@
+package com.example.tracklytics.user;
+
+import java.util.Locale;
+
+// Spotify's /me/top time_range values. MEDIUM_TERM is Spotify's default and the range mirrored into
+// the user_top_tracks/user_top_artists join tables.
+public enum TimeRange {
+    SHORT_TERM("short_term"),
+    MEDIUM_TERM("medium_term"),
+    LONG_TERM("long_term");
+
+    private final String apiValue;
+
+    TimeRange(String apiValue) {
+        this.apiValue = apiValue;
+    }
+
+    public String apiValue() {
+        return apiValue;
+    }
+
+    // Accepts "short_term" or just "short"; no value means medium term
+    public static TimeRange fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return MEDIUM_TERM;
+        }
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        for (TimeRange range : values()) {
+            if (range.apiValue.equals(normalized) || range.apiValue.equals(normalized + "_term")) {
+                return range;
+            }
+        }
+        throw new IllegalArgumentException("Unknown time range: " + value);
+    }
+}
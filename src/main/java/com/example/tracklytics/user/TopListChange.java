@@ -0,0 +1,11 @@
+package com.example.tracklytics.user;
+
+// How many rows a top-list update inserted into and deleted from its join table
+public record TopListChange(int added, int removed) {
+
+    public static final TopListChange NONE = new TopListChange(0, 0);
+
+    public boolean isEmpty() {
+        return added == 0 && removed == 0;
+    }
+}
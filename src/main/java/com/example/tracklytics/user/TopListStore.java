@@ -0,0 +1,55 @@
+package com.example.tracklytics.user;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// One user_top_lists row per (user, item type, time range): the catalog ids in Spotify's rank order plus the
+// fingerprint of the response they came from. Written with plain JDBC so a sync never loads the entity.
+@Component
+public class TopListStore {
+
+    public static final String TRACKS = "track";
+    public static final String ARTISTS = "artist";
+
+    private static final String UPSERT = """
+            INSERT INTO user_top_lists (user_id, item_type, time_range, fingerprint, item_ids, synced_at)
+            VALUES (?, ?, ?, ?, ?, now())
+            ON CONFLICT (user_id, item_type, time_range) DO UPDATE SET
+                fingerprint = EXCLUDED.fingerprint,
+                item_ids = EXCLUDED.item_ids,
+                synced_at = EXCLUDED.synced_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TopListStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Keyed by key(itemType, range); lists never synced are absent
+    public Map<String, Long> fingerprints(Integer userId) {
+        Map<String, Long> fingerprints = new HashMap<>();
+        jdbcTemplate.query("SELECT item_type, time_range, fingerprint FROM user_top_lists WHERE user_id = ?",
+                rs -> {
+                    fingerprints.put(rs.getString("item_type") + ":" + rs.getString("time_range"), rs.getLong("fingerprint"));
+                }, userId);
+        return fingerprints;
+    }
+
+    public void save(Integer userId, String itemType, TimeRange range, long fingerprint, Integer[] itemIds) {
+        jdbcTemplate.update(UPSERT, ps -> {
+            ps.setInt(1, userId);
+            ps.setString(2, itemType);
+            ps.setString(3, range.apiValue());
+            ps.setLong(4, fingerprint);
+            ps.setArray(5, ps.getConnection().createArrayOf("integer", itemIds));
+        });
+    }
+
+    public static String key(String itemType, TimeRange range) {
+        return itemType + ":" + range.apiValue();
+    }
+}
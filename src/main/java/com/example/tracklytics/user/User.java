@@ -5,14 +5,23 @@ import com.example.tracklytics.track.Track;
 import jakarta.persistence.*;
 
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Entity
 @Table(name = "users")
+// One graph per collection: fetching both in one join would return tracks x artists rows
+@NamedEntityGraph(name = User.WITH_TOP_TRACKS, attributeNodes = @NamedAttributeNode("topTracks"))
+@NamedEntityGraph(name = User.WITH_TOP_ARTISTS, attributeNodes = @NamedAttributeNode("topArtists"))
 public class User {
 
+    public static final String WITH_TOP_TRACKS = "User.withTopTracks";
+    public static final String WITH_TOP_ARTISTS = "User.withTopArtists";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
@@ -31,7 +40,8 @@ public class User {
 
     private Instant tokenExpiry;
 
-    @ManyToMany(fetch = FetchType.EAGER, cascade = {CascadeType.PERSIST, CascadeType.MERGE})
+    // Lazy so auth and scheduling lookups load just the user row; callers that need the lists use a fetch graph
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "user_top_tracks",
             joinColumns = @JoinColumn(name = "user_id"),
@@ -39,7 +49,7 @@ public class User {
     )
     private Set<Track> topTracks = new HashSet<>();
 
-    @ManyToMany(fetch = FetchType.EAGER, cascade = {CascadeType.PERSIST, CascadeType.MERGE})
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "user_top_artists",
             joinColumns = @JoinColumn(name = "user_id"),
@@ -49,6 +59,9 @@ public class User {
 
     private Instant lastSyncTime;
 
+    // Spotify's "after" cursor (epoch millis of the newest ingested play) for /me/player/recently-played
+    private Long recentlyPlayedCursor;
+
     // private String profileImageUrl;
 
     public User() {}
@@ -135,6 +148,14 @@ public class User {
         this.lastSyncTime = lastSyncTime;
     }
 
+    public Long getRecentlyPlayedCursor() {
+        return recentlyPlayedCursor;
+    }
+
+    public void setRecentlyPlayedCursor(Long recentlyPlayedCursor) {
+        this.recentlyPlayedCursor = recentlyPlayedCursor;
+    }
+
     // Helper methods for managing relationships
     public void addTopTrack(Track track) {
         topTracks.add(track);
@@ -152,13 +173,43 @@ public class User {
         topArtists.clear();
     }
 
-    public void updateTopTracks(Set<Track> newTracks) {
-        this.topTracks.clear();
-        this.topTracks.addAll(newTracks);
-    }
-
-    public void updateTopArtists(Set<Artist> newArtists) {
-        this.topArtists.clear();
-        this.topArtists.addAll(newArtists);
+    // Only touches the entries that actually changed, so Hibernate issues just the needed INSERTs/DELETEs.
+    // Matched by id so references, proxies and detached copies of the same track compare equal.
+    public TopListChange updateTopTracks(Set<Track> newTracks) {
+        Map<Integer, Track> toAdd = new HashMap<>();
+        for (Track track : newTracks) {
+            toAdd.put(track.getId(), track);
+        }
+
+        int removed = 0;
+        Iterator<Track> iterator = topTracks.iterator();
+        while (iterator.hasNext()) {
+            if (toAdd.remove(iterator.next().getId()) == null) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        topTracks.addAll(toAdd.values());
+
+        return new TopListChange(toAdd.size(), removed);
+    }
+
+    public TopListChange updateTopArtists(Set<Artist> newArtists) {
+        Map<Integer, Artist> toAdd = new HashMap<>();
+        for (Artist artist : newArtists) {
+            toAdd.put(artist.getId(), artist);
+        }
+
+        int removed = 0;
+        Iterator<Artist> iterator = topArtists.iterator();
+        while (iterator.hasNext()) {
+            if (toAdd.remove(iterator.next().getId()) == null) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        topArtists.addAll(toAdd.values());
+
+        return new TopListChange(toAdd.size(), removed);
     }
 }
\ No newline at end of file
@@ -28,7 +28,7 @@ public class UserController {
         }
 
         String spotifyId = principal.getAttribute("id");
-        Optional<User> userOpt = userService.findBySpotifyId(spotifyId);
+        Optional<User> userOpt = userService.findWithTopTracksBySpotifyId(spotifyId);
 
         if (userOpt.isEmpty()) {
             return ResponseEntity.status(404).body(Map.of("error", "User not found"));
@@ -54,7 +54,7 @@ public class UserController {
         }
 
         String spotifyId = principal.getAttribute("id");
-        Optional<User> userOpt = userService.findBySpotifyId(spotifyId);
+        Optional<User> userOpt = userService.findWithTopArtistsBySpotifyId(spotifyId);
 
         if (userOpt.isEmpty()) {
             return ResponseEntity.status(404).body(Map.of("error", "User not found"));
@@ -80,7 +80,7 @@ public class UserController {
         }
 
         String spotifyId = principal.getAttribute("id");
-        Optional<User> userOpt = userService.findBySpotifyId(spotifyId);
+        Optional<User> userOpt = userService.findWithTopListsBySpotifyId(spotifyId);
 
         if (userOpt.isEmpty()) {
             return ResponseEntity.status(404).body(Map.of("error", "User not found"));
@@ -101,7 +101,7 @@ public class UserController {
     // Public endpoint to get specific user's data (by spotifyId)
     @GetMapping("/users/{spotifyId}/top-tracks")
     public ResponseEntity<?> getPublicUserTopTracks(@PathVariable String spotifyId) {
-        Optional<User> userOpt = userService.findBySpotifyId(spotifyId);
+        Optional<User> userOpt = userService.findWithTopTracksBySpotifyId(spotifyId);
 
         if (userOpt.isEmpty()) {
             return ResponseEntity.status(404).body(Map.of("error", "User not found"));
@@ -118,7 +118,7 @@ public class UserController {
 
     @GetMapping("/users/{spotifyId}/top-artists")
     public ResponseEntity<?> getPublicUserTopArtists(@PathVariable String spotifyId) {
-        Optional<User> userOpt = userService.findBySpotifyId(spotifyId);
+        Optional<User> userOpt = userService.findWithTopArtistsBySpotifyId(spotifyId);
 
         if (userOpt.isEmpty()) {
             return ResponseEntity.status(404).body(Map.of("error", "User not found"));
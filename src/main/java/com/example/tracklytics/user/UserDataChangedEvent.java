@@ -0,0 +1,5 @@
+package com.example.tracklytics.user;
+
+// Published after a user's row or top lists change (sync, re-login) so caches keyed by the user can drop it
+public record UserDataChangedEvent(String spotifyId) {
+}
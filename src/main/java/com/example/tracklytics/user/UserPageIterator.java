@@ -0,0 +1,59 @@
+package com.example.tracklytics.user;
+
+import org.springframework.data.domain.Limit;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.ToIntFunction;
+
+// Walks the users table in id order, one keyset page (WHERE id > last ORDER BY id LIMIT n) at a time.
+// Each page is its own short query returning DTOs, so only the current page is ever on the heap.
+class UserPageIterator<T> implements Iterator<List<T>> {
+
+    // One keyset page: users with id > afterId, in id order, at most limit of them
+    @FunctionalInterface
+    interface PageQuery<T> {
+        List<T> fetch(int afterId, Limit limit);
+    }
+
+    private final PageQuery<T> pageQuery;
+    private final ToIntFunction<T> idOf;
+    private final int pageSize;
+
+    private int lastId = Integer.MIN_VALUE;
+    private List<T> next;
+    private boolean exhausted;
+
+    UserPageIterator(PageQuery<T> pageQuery, ToIntFunction<T> idOf, int pageSize) {
+        this.pageQuery = pageQuery;
+        this.idOf = idOf;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !exhausted) {
+            List<T> page = pageQuery.fetch(lastId, Limit.of(pageSize));
+            if (page.isEmpty()) {
+                exhausted = true;
+            } else {
+                next = page;
+                lastId = idOf.applyAsInt(page.get(page.size() - 1));
+                // A short page is the last one; skip the extra empty query
+                exhausted = page.size() < pageSize;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public List<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<T> page = next;
+        next = null;
+        return page;
+    }
+}
@@ -1,7 +1,15 @@
 package com.example.tracklytics.user;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User,Integer> {
@@ -9,4 +17,134 @@ public interface UserRepository extends JpaRepository<User,Integer> {
     Optional<User> findBySpotifyId(String spotifyId);
 
     Optional<User> findByEmail(String email);
+
+    @EntityGraph(User.WITH_TOP_TRACKS)
+    Optional<User> findWithTopTracksBySpotifyId(String spotifyId);
+
+    @EntityGraph(User.WITH_TOP_ARTISTS)
+    Optional<User> findWithTopArtistsBySpotifyId(String spotifyId);
+
+    @EntityGraph(User.WITH_TOP_TRACKS)
+    Optional<User> findWithTopTracksById(Integer id);
+
+    @EntityGraph(User.WITH_TOP_ARTISTS)
+    Optional<User> findWithTopArtistsById(Integer id);
+
+    @EntityGraph(User.WITH_TOP_TRACKS)
+    List<User> findWithTopTracksByIdIn(Collection<Integer> ids);
+
+    @EntityGraph(User.WITH_TOP_ARTISTS)
+    List<User> findWithTopArtistsByIdIn(Collection<Integer> ids);
+
+    // Keyset page over the primary key: no OFFSET, so every page costs the same however deep it is
+    @Query("""
+            SELECT new com.example.tracklytics.user.UserSummary(
+                u.id, u.spotifyId, u.displayName, u.accessToken, u.tokenExpiry, u.lastSyncTime)
+            FROM User u
+            WHERE u.id > :afterId
+            ORDER BY u.id
+            """)
+    List<UserSummary> findSummariesAfter(@Param("afterId") int afterId, Limit limit);
+
+    @Query("""
+            SELECT new com.example.tracklytics.user.UserSummary(
+                u.id, u.spotifyId, u.displayName, u.accessToken, u.tokenExpiry, u.lastSyncTime)
+            FROM User u
+            WHERE u.id IN :ids
+            """)
+    List<UserSummary> findSummariesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Keyset page of users with a live token, carrying the recently-played cursor; one primary-key range scan per page
+    @Query("""
+            SELECT new com.example.tracklytics.user.RecentlyPlayedCursor(
+                u.id, u.spotifyId, u.accessToken, u.tokenExpiry, u.recentlyPlayedCursor)
+            FROM User u
+            WHERE u.id > :afterId
+              AND u.accessToken IS NOT NULL
+              AND (u.tokenExpiry IS NULL OR u.tokenExpiry > :now)
+            ORDER BY u.id
+            """)
+    List<RecentlyPlayedCursor> findRecentlyPlayedCursorsAfter(@Param("afterId") int afterId,
+                                                              @Param("now") Instant now,
+                                                              Limit limit);
+
+    // Only ever moves forward, so a slow poll that finishes late can't rewind a newer cursor
+    @Modifying
+    @Query("""
+            UPDATE User u SET u.recentlyPlayedCursor = :cursor
+            WHERE u.id = :id AND (u.recentlyPlayedCursor IS NULL OR u.recentlyPlayedCursor < :cursor)
+            """)
+    int advanceRecentlyPlayedCursor(@Param("id") Integer id, @Param("cursor") Long cursor);
+
+    // Users holding a refresh token whose access token expires before the cut-off, soonest first
+    @Query("""
+            SELECT new com.example.tracklytics.user.UserToken(
+                u.id, u.spotifyId, u.accessToken, u.refreshToken, u.tokenExpiry)
+            FROM User u
+            WHERE u.refreshToken IS NOT NULL
+              AND (u.tokenExpiry IS NULL OR u.tokenExpiry < :before)
+            ORDER BY u.tokenExpiry NULLS FIRST
+            """)
+    List<UserToken> findTokensExpiringBefore(@Param("before") Instant before, Limit limit);
+
+    @Query("""
+            SELECT new com.example.tracklytics.user.UserToken(
+                u.id, u.spotifyId, u.accessToken, u.refreshToken, u.tokenExpiry)
+            FROM User u
+            WHERE u.id IN :ids
+            """)
+    List<UserToken> findTokensByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Token writes go straight to the row so refreshing never loads (or flushes) the top-list collections.
+    // A null refreshToken keeps the stored one: Spotify only sometimes rotates it.
+    @Modifying
+    @Query("""
+            UPDATE User u
+            SET u.accessToken = :accessToken,
+                u.tokenExpiry = :tokenExpiry,
+                u.refreshToken = COALESCE(:refreshToken, u.refreshToken)
+            WHERE u.id = :id
+            """)
+    int updateTokens(@Param("id") Integer id, @Param("accessToken") String accessToken,
+                     @Param("tokenExpiry") Instant tokenExpiry, @Param("refreshToken") String refreshToken);
+
+    @Modifying
+    @Query("""
+            UPDATE User u
+            SET u.accessToken = :accessToken,
+                u.tokenExpiry = :tokenExpiry,
+                u.refreshToken = COALESCE(:refreshToken, u.refreshToken)
+            WHERE u.spotifyId = :spotifyId
+            """)
+    int updateTokensBySpotifyId(@Param("spotifyId") String spotifyId, @Param("accessToken") String accessToken,
+                                @Param("tokenExpiry") Instant tokenExpiry, @Param("refreshToken") String refreshToken);
+
+    @Modifying
+    @Query("UPDATE User u SET u.lastSyncTime = :syncTime WHERE u.id = :id")
+    int updateLastSyncTime(@Param("id") Integer id, @Param("syncTime") Instant syncTime);
+
+    // Only clears the token that was rejected; a newer one stored by a login in the meantime is kept
+    @Modifying
+    @Query("UPDATE User u SET u.refreshToken = NULL WHERE u.id = :id AND u.refreshToken = :used")
+    int clearRefreshToken(@Param("id") Integer id, @Param("used") String usedRefreshToken);
+
+    // Answers "has this user synced anything" from the join tables without loading either list
+    @Query(value = """
+            SELECT EXISTS (SELECT 1 FROM user_top_tracks WHERE user_id = :userId)
+                OR EXISTS (SELECT 1 FROM user_top_artists WHERE user_id = :userId)
+            """, nativeQuery = true)
+    boolean hasTopItems(@Param("userId") Integer userId);
+
+    // Users with at least one top artist in the genre: genres.name -> artist_genres -> user_top_artists (artist_id index)
+    @Query(value = """
+            SELECT u.* FROM users u
+            WHERE u.id IN (
+                SELECT uta.user_id
+                FROM genres g
+                JOIN artist_genres ag ON ag.genre_id = g.id
+                JOIN user_top_artists uta ON uta.artist_id = ag.artist_id
+                WHERE g.name = :genre
+            )
+            """, nativeQuery = true)
+    List<User> findByTopArtistGenre(@Param("genre") String genre);
 }
@@ -1,7 +1,13 @@
 package com.example.tracklytics.user;
 
+import com.example.tracklytics.insights.GenreDictionary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -9,15 +15,119 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final int pageSize;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository,
+                       @Value("${sync.page-size:500}") int pageSize) {
         this.userRepository = userRepository;
+        this.pageSize = Math.max(1, pageSize);
     }
 
     public Optional<User> findBySpotifyId(String spotifyId) {
         return userRepository.findBySpotifyId(spotifyId);
     }
 
+    @Transactional(readOnly = true)
+    public Optional<User> findWithTopTracksBySpotifyId(String spotifyId) {
+        return userRepository.findWithTopTracksBySpotifyId(spotifyId);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<User> findWithTopArtistsBySpotifyId(String spotifyId) {
+        return userRepository.findWithTopArtistsBySpotifyId(spotifyId);
+    }
+
+    // Two queries, one per list: the second returns the same managed instance and fills in its artists
+    @Transactional(readOnly = true)
+    public Optional<User> findWithTopListsBySpotifyId(String spotifyId) {
+        Optional<User> user = userRepository.findWithTopTracksBySpotifyId(spotifyId);
+        user.ifPresent(found -> userRepository.findWithTopArtistsById(found.getId()));
+        return user;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<User> findWithTopListsById(Integer id) {
+        Optional<User> user = userRepository.findWithTopTracksById(id);
+        user.ifPresent(found -> userRepository.findWithTopArtistsById(id));
+        return user;
+    }
+
+    @Transactional(readOnly = true)
+    public List<User> findWithTopListsByIds(Collection<Integer> ids) {
+        List<User> users = userRepository.findWithTopTracksByIdIn(ids);
+        if (!users.isEmpty()) {
+            userRepository.findWithTopArtistsByIdIn(ids);
+        }
+        return users;
+    }
+
+    // Streams every user as keyset-paginated pages of sync.page-size summaries
+    public Iterable<List<UserSummary>> userPages() {
+        return userPages(pageSize);
+    }
+
+    public Iterable<List<UserSummary>> userPages(int pageSize) {
+        return () -> new UserPageIterator<>(userRepository::findSummariesAfter, UserSummary::id, Math.max(1, pageSize));
+    }
+
+    public List<UserToken> findTokensExpiringBefore(Instant before, int limit) {
+        return userRepository.findTokensExpiringBefore(before, Limit.of(Math.max(1, limit)));
+    }
+
+    public List<UserToken> findTokensByIds(Collection<Integer> ids) {
+        return ids.isEmpty() ? List.of() : userRepository.findTokensByIdIn(ids);
+    }
+
+    @Transactional
+    public boolean updateTokens(Integer userId, String accessToken, Instant tokenExpiry, String refreshToken) {
+        return userRepository.updateTokens(userId, accessToken, tokenExpiry, refreshToken) == 1;
+    }
+
+    @Transactional
+    public boolean updateTokens(String spotifyId, String accessToken, Instant tokenExpiry, String refreshToken) {
+        return userRepository.updateTokensBySpotifyId(spotifyId, accessToken, tokenExpiry, refreshToken) == 1;
+    }
+
+    // A sync that found nothing new only needs to move lastSyncTime
+    @Transactional
+    public void markSynced(Integer userId, Instant syncTime) {
+        userRepository.updateLastSyncTime(userId, syncTime);
+    }
+
+    // The refresh token was revoked; the user has to log in again before we can sync them.
+    // Returns false if the stored token is no longer the one that was rejected.
+    @Transactional
+    public boolean clearRefreshToken(Integer userId, String usedRefreshToken) {
+        return userRepository.clearRefreshToken(userId, usedRefreshToken) == 1;
+    }
+
+    // Users with a live token and their recently-played cursors, read lazily in keyset pages
+    public Iterable<List<RecentlyPlayedCursor>> recentlyPlayedCursorPages() {
+        return () -> {
+            Instant now = Instant.now();
+            return new UserPageIterator<>(
+                    (afterId, limit) -> userRepository.findRecentlyPlayedCursorsAfter(afterId, now, limit),
+                    RecentlyPlayedCursor::id, pageSize);
+        };
+    }
+
+    @Transactional
+    public void advanceRecentlyPlayedCursor(Integer userId, long cursor) {
+        userRepository.advanceRecentlyPlayedCursor(userId, cursor);
+    }
+
+    public List<UserSummary> findSummariesByIds(Collection<Integer> ids) {
+        return ids.isEmpty() ? List.of() : userRepository.findSummariesByIdIn(ids);
+    }
+
+    public boolean hasTopItems(Integer userId) {
+        return userRepository.hasTopItems(userId);
+    }
+
+    public List<User> findUsersByGenre(String genre) {
+        return userRepository.findByTopArtistGenre(GenreDictionary.normalize(genre));
+    }
+
     public Optional<User> findByEmail(String email) {
         return userRepository.findByEmail(email);
     }
@@ -30,12 +140,4 @@ public class UserService {
         return userRepository.findBySpotifyId(spotifyId).isPresent();
     }
 
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
-    }
-
-    public List<User> findUsersNeedingSync() {
-        // You can implement custom query here if needed
-        return userRepository.findAll();
-    }
 }
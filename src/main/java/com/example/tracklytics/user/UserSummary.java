@@ -0,0 +1,13 @@
+package com.example.tracklytics.user;
+
+import java.time.Instant;
+
+// Read-only projection of the users columns the scheduled jobs need; never managed by the persistence context
+public record UserSummary(Integer id, String spotifyId, String displayName, String accessToken,
+                          Instant tokenExpiry, Instant lastSyncTime) {
+
+    public static UserSummary from(User user) {
+        return new UserSummary(user.getId(), user.getSpotifyId(), user.getDisplayName(), user.getAccessToken(),
+                user.getTokenExpiry(), user.getLastSyncTime());
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.tracklytics.user;
+
+import java.time.Instant;
+
+// A user's Spotify credentials without the entity, for refreshing tokens off the request path
+public record UserToken(Integer id, String spotifyId, String accessToken, String refreshToken, Instant tokenExpiry) {
+}
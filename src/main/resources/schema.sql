@@ -0,0 +1,107 @@
+-- Runs on every startup after Hibernate's ddl-auto, so every statement must be idempotent.
+
+-- tracks/artists moved from IDENTITY to pooled sequences (allocationSize = 50) so inserts can be batched.
+-- Drop the old identity default and move each sequence past the ids it handed out.
+ALTER TABLE tracks ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE artists ALTER COLUMN id DROP IDENTITY IF EXISTS;
+SELECT setval('tracks_seq', GREATEST((SELECT last_value FROM tracks_seq), (SELECT COALESCE(MAX(id), 0) FROM tracks) + 50));
+SELECT setval('artists_seq', GREATEST((SELECT last_value FROM artists_seq), (SELECT COALESCE(MAX(id), 0) FROM artists) + 50));
+
+-- Normalized genre storage: one row per distinct genre name, one link row per (genre, artist).
+-- The primary key leads with genre_id so "artists in genre X" is an index range scan.
+CREATE TABLE IF NOT EXISTS genres (
+    id   SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+CREATE TABLE IF NOT EXISTS artist_genres (
+    genre_id  INTEGER NOT NULL REFERENCES genres (id),
+    artist_id INTEGER NOT NULL REFERENCES artists (id) ON DELETE CASCADE,
+    PRIMARY KEY (genre_id, artist_id)
+);
+CREATE INDEX IF NOT EXISTS artist_genres_artist_id_idx ON artist_genres (artist_id);
+CREATE INDEX IF NOT EXISTS user_top_artists_artist_id_idx ON user_top_artists (artist_id);
+
+-- One-off data migrations record their name here once applied, so they don't rescan tables on every startup.
+CREATE TABLE IF NOT EXISTS schema_migrations (
+    name       VARCHAR(255) PRIMARY KEY,
+    applied_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- Backfill from the comma-joined artists.genres column; only artists with no link rows yet are touched.
+-- Names are normalized the same way as GenreDictionary (trimmed, lower-case) and inserted in name order,
+-- the same lock order ArtistUpsertRepositoryImpl uses, so nodes starting together can't deadlock.
+INSERT INTO genres (name)
+SELECT DISTINCT lower(trim(g.name))
+FROM artists a, unnest(string_to_array(a.genres, ',')) AS g(name)
+WHERE trim(g.name) <> ''
+  AND NOT EXISTS (SELECT 1 FROM artist_genres ag WHERE ag.artist_id = a.id)
+  AND NOT EXISTS (SELECT 1 FROM schema_migrations WHERE name = 'artist_genres_backfill')
+ORDER BY 1
+ON CONFLICT (name) DO NOTHING;
+INSERT INTO artist_genres (genre_id, artist_id)
+SELECT DISTINCT gn.id, a.id
+FROM artists a
+CROSS JOIN unnest(string_to_array(a.genres, ',')) AS g(name)
+JOIN genres gn ON gn.name = lower(trim(g.name))
+WHERE NOT EXISTS (SELECT 1 FROM artist_genres ag WHERE ag.artist_id = a.id)
+  AND NOT EXISTS (SELECT 1 FROM schema_migrations WHERE name = 'artist_genres_backfill')
+ON CONFLICT DO NOTHING;
+INSERT INTO schema_migrations (name) VALUES ('artist_genres_backfill') ON CONFLICT (name) DO NOTHING;
+
+-- SyncJobQueue selects due users in one statement with COALESCE(last_sync_time, '-infinity') < cut-off, so
+-- "never synced" and "synced long ago" form a single range of this expression; only rows with a token qualify.
+-- Replaces users_sync_due_idx on the bare columns, which the IS NULL OR ... form couldn't use as one range.
+DROP INDEX IF EXISTS users_sync_due_idx;
+CREATE INDEX IF NOT EXISTS users_sync_due_at_idx ON users ((COALESCE(last_sync_time, '-infinity')), token_expiry)
+    WHERE access_token IS NOT NULL;
+
+-- Sync work queue shared by every node: one row per user, claimed with FOR UPDATE SKIP LOCKED.
+-- PENDING -> RUNNING (leased) -> DONE, or back to PENDING with a later run_after on failure,
+-- or DEAD once max attempts are used up. A RUNNING row whose lease ran out is claimable again.
+CREATE TABLE IF NOT EXISTS sync_jobs (
+    user_id     INTEGER PRIMARY KEY REFERENCES users (id) ON DELETE CASCADE,
+    status      VARCHAR(16) NOT NULL,
+    run_after   TIMESTAMPTZ NOT NULL DEFAULT now(),
+    lease_until TIMESTAMPTZ,
+    leased_by   VARCHAR(255),
+    attempts    INTEGER NOT NULL DEFAULT 0,
+    last_error  TEXT,
+    updated_at  TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+CREATE INDEX IF NOT EXISTS sync_jobs_pending_idx ON sync_jobs (run_after) WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS sync_jobs_running_idx ON sync_jobs (lease_until) WHERE status = 'RUNNING';
+
+-- Live Tracklytics instances. Each node upserts its heartbeat; nodes seen within cluster.node-timeout-seconds
+-- form the consistent-hash ring that decides which node owns which users.
+CREATE TABLE IF NOT EXISTS cluster_nodes (
+    node_id      VARCHAR(255) PRIMARY KEY,
+    started_at   TIMESTAMPTZ NOT NULL DEFAULT now(),
+    heartbeat_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- Token refresher: "refresh tokens expiring before X, soonest first" over users that have a refresh token
+CREATE INDEX IF NOT EXISTS users_token_refresh_idx ON users (token_expiry NULLS FIRST) WHERE refresh_token IS NOT NULL;
+
+-- Top lists per Spotify time_range: catalog ids in rank order and the fingerprint of the response they came from.
+-- Medium term is also mirrored into user_top_tracks/user_top_artists for the insights and genre queries.
+CREATE TABLE IF NOT EXISTS user_top_lists (
+    user_id     INTEGER NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    item_type   VARCHAR(8) NOT NULL,
+    time_range  VARCHAR(16) NOT NULL,
+    fingerprint BIGINT NOT NULL,
+    item_ids    INTEGER[] NOT NULL,
+    synced_at   TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (user_id, item_type, time_range)
+);
+
+-- Append-only play history from /me/player/recently-played, range-partitioned by month on played_at.
+-- Monthly partitions are created on demand by ListeningEventStore. The primary key dedupes re-sent plays;
+-- plays arrive roughly in played_at order, so a BRIN index covers time-range scans for a few pages per partition.
+CREATE TABLE IF NOT EXISTS listening_events (
+    user_id      INTEGER NOT NULL,
+    track_id     INTEGER NOT NULL,
+    played_at    TIMESTAMPTZ NOT NULL,
+    context_type VARCHAR(32),
+    PRIMARY KEY (user_id, played_at)
+) PARTITION BY RANGE (played_at);
+CREATE INDEX IF NOT EXISTS listening_events_played_at_brin ON listening_events USING brin (played_at);
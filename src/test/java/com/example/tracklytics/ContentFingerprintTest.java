@@ -0,0 +1,49 @@
+package com.example.tracklytics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentFingerprintTest {
+
+    @Test
+    void isStableAcrossRuns() {
+        // Fingerprints are persisted, so changing the hash would turn the next sync into a full catalog rewrite
+        assertThat(ContentFingerprint.of()).isEqualTo(0xcbf29ce484222325L);
+        assertThat(ContentFingerprint.of("The Funeral", "Everything All the Time", 323000, 71))
+                .isEqualTo(-3372432102010316141L);
+    }
+
+    @Test
+    void equalFieldsHashEqually() {
+        assertThat(ContentFingerprint.of("Nude", null, 238000, 65))
+                .isEqualTo(ContentFingerprint.of(new String("Nude"), null, Integer.valueOf(238000), 65));
+    }
+
+    @Test
+    void fieldOrderMatters() {
+        assertThat(ContentFingerprint.of("a", "b")).isNotEqualTo(ContentFingerprint.of("b", "a"));
+        assertThat(ContentFingerprint.of(65, null)).isNotEqualTo(ContentFingerprint.of(null, 65));
+    }
+
+    @Test
+    void nullIsDistinctFromEmptyAndLiteralNull() {
+        long nullField = ContentFingerprint.of((Object) null);
+
+        assertThat(nullField).isNotEqualTo(ContentFingerprint.of(""));
+        assertThat(nullField).isNotEqualTo(ContentFingerprint.of("null"));
+        assertThat(ContentFingerprint.of("a")).isNotEqualTo(ContentFingerprint.of("a", null));
+    }
+
+    @Test
+    void separatorKeepsFieldBoundaries() {
+        assertThat(ContentFingerprint.of("ab", "c")).isNotEqualTo(ContentFingerprint.of("a", "bc"));
+        assertThat(ContentFingerprint.of("", "x")).isNotEqualTo(ContentFingerprint.of("x", ""));
+    }
+
+    @Test
+    void highByteOfEachCharCounts() {
+        // U+00E9 and U+01E9 share their low byte
+        assertThat(ContentFingerprint.of("é")).isNotEqualTo(ContentFingerprint.of("ǩ"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.tracklytics;
+
+import com.example.tracklytics.artist.Artist;
+import com.example.tracklytics.artist.ArtistService;
+import com.example.tracklytics.spotify.SpotifyClient;
+import com.example.tracklytics.spotify.SpotifyResponseDecoder;
+import com.example.tracklytics.sync.UserSyncChanges;
+import com.example.tracklytics.track.Track;
+import com.example.tracklytics.track.TrackService;
+import com.example.tracklytics.user.TimeRange;
+import com.example.tracklytics.user.TopListStore;
+import com.example.tracklytics.user.User;
+import com.example.tracklytics.user.UserDataChangedEvent;
+import com.example.tracklytics.user.UserService;
+import com.example.tracklytics.user.UserSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SpotifyApiServiceTest {
+
+    private static final String SHORT_TERM_TRACKS = "/top/tracks?time_range=short_term&";
+
+    private final SpotifyClient spotifyClient = mock(SpotifyClient.class);
+    private final TrackService trackService = mock(TrackService.class);
+    private final ArtistService artistService = mock(ArtistService.class);
+    private final UserService userService = mock(UserService.class);
+    private final TopListStore topListStore = mock(TopListStore.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SpotifyApiService service = new SpotifyApiService(spotifyClient,
+            new SpotifyResponseDecoder(new ObjectMapper()), trackService, artistService, userService, topListStore,
+            mock(PlatformTransactionManager.class), eventPublisher, meterRegistry, 50);
+
+    private final UserSummary user = new UserSummary(1, "user-1", "User One", "access-1",
+            Instant.now().plusSeconds(3600), null);
+    // user_top_lists as the stubbed store sees it, and catalog ids handed out by the stubbed upserts
+    private final Map<String, Long> storedFingerprints = new HashMap<>();
+    private final Map<String, Integer> catalogIds = new HashMap<>();
+    private byte[] shortTermTracks = fixture("top-tracks.json");
+
+    @BeforeEach
+    void syncOnceToStoreEveryList() {
+        when(spotifyClient.get(anyString(), anyString())).thenAnswer(invocation -> {
+            String url = invocation.getArgument(0);
+            byte[] body = url.contains(SHORT_TERM_TRACKS) ? shortTermTracks
+                    : fixture(url.contains("/top/tracks") ? "top-tracks.json" : "top-artists.json");
+            return CompletableFuture.completedFuture(body);
+        });
+        when(topListStore.fingerprints(1)).thenAnswer(invocation -> new HashMap<>(storedFingerprints));
+        doAnswer(invocation -> storedFingerprints.put(
+                TopListStore.key(invocation.getArgument(1), invocation.getArgument(2)), invocation.getArgument(3)))
+                .when(topListStore).save(anyInt(), anyString(), any(), anyLong(), any());
+        when(trackService.upsertAllBySpotifyId(any())).thenAnswer(invocation ->
+                assignIds(invocation.<Collection<Track>>getArgument(0).stream().map(Track::getSpotifyId).toList()));
+        when(artistService.upsertAllBySpotifyId(any())).thenAnswer(invocation ->
+                assignIds(invocation.<Collection<Artist>>getArgument(0).stream()
+                        .map(Artist::getSpotifyId).toList()));
+        when(userService.findWithTopListsById(1)).thenReturn(Optional.of(new User("user-1", "User One", null)));
+        when(trackService.referencesTo(any())).thenReturn(Set.of());
+        when(artistService.referencesTo(any())).thenReturn(Set.of());
+
+        service.syncUser(user);
+
+        assertThat(storedFingerprints).hasSize(6);
+        clearInvocations(trackService, artistService, userService, topListStore, eventPublisher);
+    }
+
+    @Test
+    void unchangedListsOnlyMarkTheUserSynced() {
+        UserSyncChanges changes = service.syncUser(user);
+
+        assertThat(changes).isEqualTo(UserSyncChanges.NONE);
+        verify(userService).markSynced(eq(1), any());
+        assertThat(meterRegistry.get("tracklytics.sync.noop").counter().count()).isEqualTo(1);
+        verify(topListStore, never()).save(anyInt(), anyString(), any(), anyLong(), any());
+        verifyNoInteractions(trackService, artistService, eventPublisher);
+    }
+
+    @Test
+    void onlyTheChangedListIsUpsertedAndSaved() {
+        shortTermTracks = utf8("""
+                {"items":[{"id":"7nfBZBwmeMOQGO0B7Ju3Vq","name":"Idioteque","album":{"name":"Kid A"},
+                           "duration_ms":309000,"popularity":60}]}
+                """);
+
+        UserSyncChanges changes = service.syncUser(user);
+
+        // Medium term is unchanged, so the join tables are left alone
+        assertThat(changes).isEqualTo(UserSyncChanges.NONE);
+        verify(trackService).upsertAllBySpotifyId(argThat(tracks ->
+                tracks.stream().map(Track::getSpotifyId).toList().equals(List.of("7nfBZBwmeMOQGO0B7Ju3Vq"))));
+        verify(artistService, never()).upsertAllBySpotifyId(any());
+        verify(topListStore).save(eq(1), eq(TopListStore.TRACKS), eq(TimeRange.SHORT_TERM), anyLong(),
+                eq(new Integer[]{catalogIds.get("7nfBZBwmeMOQGO0B7Ju3Vq")}));
+        verify(topListStore, times(1)).save(anyInt(), anyString(), any(), anyLong(), any());
+        verify(userService).markSynced(eq(1), any());
+        verify(userService, never()).findWithTopListsById(any());
+        verify(eventPublisher).publishEvent(new UserDataChangedEvent("user-1"));
+        assertThat(meterRegistry.get("tracklytics.sync.noop").counter().count()).isZero();
+    }
+
+    private Map<String, Integer> assignIds(List<String> spotifyIds) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (String spotifyId : spotifyIds) {
+            ids.put(spotifyId, catalogIds.computeIfAbsent(spotifyId, id -> catalogIds.size() + 1));
+        }
+        return ids;
+    }
+
+    private static byte[] fixture(String name) {
+        try (InputStream in = SpotifyApiServiceTest.class.getResourceAsStream("/spotify/" + name)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.tracklytics.authentication;
+
+import com.example.tracklytics.cluster.ClusterMembership;
+import com.example.tracklytics.user.UserService;
+import com.example.tracklytics.user.UserToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2RefreshTokenGrantRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class SpotifyTokenRefresherTest {
+
+    private static final ClientRegistration SPOTIFY = ClientRegistration.withRegistrationId("spotify")
+            .clientId("client")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("http://127.0.0.1:8080/login/oauth2/code/spotify")
+            .authorizationUri("https://accounts.spotify.com/authorize")
+            .tokenUri("https://accounts.spotify.com/api/token")
+            .build();
+
+    private final UserService userService = mock(UserService.class);
+    private final ClusterMembership clusterMembership = mock(ClusterMembership.class);
+    @SuppressWarnings("unchecked")
+    private final OAuth2AccessTokenResponseClient<OAuth2RefreshTokenGrantRequest> tokenClient =
+            mock(OAuth2AccessTokenResponseClient.class);
+    // What findTokensByIds re-reads, keyed by user id
+    private final Map<Integer, UserToken> stored = new HashMap<>();
+    private final Instant now = Instant.now();
+
+    @BeforeEach
+    void stubUsers() {
+        when(clusterMembership.owns(anyInt())).thenReturn(true);
+        when(userService.findTokensByIds(any())).thenAnswer(invocation -> invocation.<Collection<Integer>>getArgument(0)
+                .stream().map(stored::get).toList());
+        when(tokenClient.getTokenResponse(any())).thenReturn(response("access-new", "refresh-new"));
+    }
+
+    @Test
+    void refreshesInExpiryOrderAndQueuesEachUserOnce() {
+        UserToken later = token(1, now.minusSeconds(600));
+        UserToken sooner = token(2, now.minusSeconds(1200));
+        when(userService.findTokensExpiringBefore(any(), anyInt()))
+                .thenReturn(List.of(later, sooner, token(1, now.minusSeconds(1800))));
+
+        refresher(1).refreshDueTokens();
+
+        InOrder order = inOrder(userService);
+        order.verify(userService).findTokensByIds(List.of(2));
+        order.verify(userService).findTokensByIds(List.of(1));
+        verify(userService, times(2)).findTokensByIds(any());
+        verify(userService).updateTokens(eq(2), eq("access-new"), any(), eq("refresh-new"));
+    }
+
+    @Test
+    void reloadWaitsForTheReloadInterval() {
+        when(userService.findTokensExpiringBefore(any(), anyInt())).thenReturn(List.of(token(1, now.minusSeconds(60))));
+        SpotifyTokenRefresher refresher = refresher(50);
+
+        refresher.refreshDueTokens();
+        refresher.refreshDueTokens();
+
+        verify(userService, times(1)).findTokensExpiringBefore(any(), eq(50_000));
+        verify(tokenClient, times(1)).getTokenResponse(any());
+    }
+
+    @Test
+    void failedRefreshIsRetriedOnlyAfterTheRetryDelay() throws InterruptedException {
+        when(userService.findTokensExpiringBefore(any(), anyInt())).thenReturn(List.of(token(1, now.minusSeconds(60))));
+        when(tokenClient.getTokenResponse(any()))
+                .thenThrow(new IllegalStateException("connection reset"))
+                .thenReturn(response("access-new", null));
+        SpotifyTokenRefresher refresher = refresher(50);
+
+        refresher.refreshDueTokens();
+        refresher.refreshDueTokens();
+        verify(tokenClient, times(1)).getTokenResponse(any());
+        verify(userService, never()).updateTokens(anyInt(), any(), any(), any());
+
+        Thread.sleep(1100);
+        refresher.refreshDueTokens();
+        verify(tokenClient, times(2)).getTokenResponse(any());
+        verify(userService).updateTokens(eq(1), eq("access-new"), any(), isNull());
+    }
+
+    @Test
+    void usersNoLongerOwnedWhenPolledAreDropped() {
+        when(userService.findTokensExpiringBefore(any(), anyInt())).thenReturn(List.of(token(1, now.minusSeconds(60))));
+        // Owned at reload, moved to another node before the poll
+        when(clusterMembership.owns(1)).thenReturn(true, false);
+
+        refresher(50).refreshDueTokens();
+
+        verify(userService, never()).findTokensByIds(any());
+        verifyNoInteractions(tokenClient);
+    }
+
+    @Test
+    void usersNoLongerOwnedWhenRefreshedAreSkipped() {
+        when(userService.findTokensExpiringBefore(any(), anyInt())).thenReturn(List.of(token(1, now.minusSeconds(60))));
+        // Owned at reload and poll, moved to another node while the batch was being read
+        when(clusterMembership.owns(1)).thenReturn(true, true, false);
+
+        refresher(50).refreshDueTokens();
+
+        verify(userService).findTokensByIds(List.of(1));
+        verifyNoInteractions(tokenClient);
+        verify(userService, never()).updateTokens(anyInt(), any(), any(), any());
+    }
+
+    @Test
+    void tokenRefreshedElsewhereSinceQueuingIsSkipped() {
+        when(userService.findTokensExpiringBefore(any(), anyInt())).thenReturn(List.of(token(1, now.minusSeconds(60))));
+        // The user logged in again: the re-read token is good for another hour and a half
+        stored.put(1, token(1, now.plusSeconds(5400)));
+
+        refresher(50).refreshDueTokens();
+
+        verifyNoInteractions(tokenClient);
+    }
+
+    @Test
+    void invalidGrantClearsTheRefreshTokenThatWasUsed() {
+        when(userService.findTokensExpiringBefore(any(), anyInt())).thenReturn(List.of(token(1, now.minusSeconds(60))));
+        when(tokenClient.getTokenResponse(any())).thenThrow(new OAuth2AuthorizationException(new OAuth2Error("invalid_grant")));
+        when(userService.clearRefreshToken(1, "refresh-1")).thenReturn(true);
+
+        refresher(50).refreshDueTokens();
+
+        verify(userService).clearRefreshToken(1, "refresh-1");
+        verify(userService, never()).updateTokens(anyInt(), any(), any(), any());
+    }
+
+    @Test
+    void invalidGrantLeavesATokenReplacedMeanwhileAndDoesNotRetry() throws InterruptedException {
+        when(userService.findTokensExpiringBefore(any(), anyInt())).thenReturn(List.of(token(1, now.minusSeconds(60))));
+        when(tokenClient.getTokenResponse(any())).thenThrow(new OAuth2AuthorizationException(new OAuth2Error("invalid_grant")));
+        // A login stored a new refresh token between the read and the clear
+        when(userService.clearRefreshToken(anyInt(), anyString())).thenReturn(false);
+        SpotifyTokenRefresher refresher = refresher(50);
+
+        refresher.refreshDueTokens();
+        Thread.sleep(1100);
+        refresher.refreshDueTokens();
+
+        verify(userService).clearRefreshToken(1, "refresh-1");
+        verify(tokenClient, times(1)).getTokenResponse(any());
+    }
+
+    private SpotifyTokenRefresher refresher(int batchSize) {
+        // 300s lead, hourly reload, 1s retry delay
+        return new SpotifyTokenRefresher(userService, clusterMembership, id -> SPOTIFY, tokenClient,
+                300, 3600, 1, batchSize, 50_000);
+    }
+
+    private UserToken token(int userId, Instant expiry) {
+        UserToken token = new UserToken(userId, "user-" + userId, "access-" + userId, "refresh-" + userId, expiry);
+        stored.putIfAbsent(userId, token);
+        return token;
+    }
+
+    private OAuth2AccessTokenResponse response(String accessToken, String refreshToken) {
+        OAuth2AccessTokenResponse.Builder builder = OAuth2AccessTokenResponse.withToken(accessToken)
+                .tokenType(OAuth2AccessToken.TokenType.BEARER)
+                .expiresIn(3600);
+        if (refreshToken != null) {
+            builder.refreshToken(refreshToken);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.tracklytics.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashRingTest {
+
+    private static final long SPACE = 1L << 32;
+    private static final long TOP = SPACE - 1;
+
+    private final HashRing ring = new HashRing(List.of("node-a", "node-b", "node-c"), 160);
+
+    @Test
+    void ownerOfAgreesWithArcsOf() {
+        Random random = new Random(7);
+        for (int run = 0; run < 100_000; run++) {
+            int userId = run < 10 ? run : random.nextInt(Integer.MAX_VALUE) + 1;
+            long hash = HashRing.hashUserId(userId);
+            String owner = ring.ownerOf(userId);
+
+            for (String node : ring.nodes()) {
+                assertThat(contains(ring.arcsOf(node), hash))
+                        .as("user %d (hash %d) in arcs of %s, owner %s", userId, hash, node, owner)
+                        .isEqualTo(node.equals(owner));
+            }
+        }
+    }
+
+    @Test
+    void arcsPartitionTheWholeSpace() {
+        long covered = 0;
+        for (String node : ring.nodes()) {
+            HashRing.Arcs arcs = ring.arcsOf(node);
+            for (int i = 0; i < arcs.from().length; i++) {
+                assertThat(arcs.to()[i]).isGreaterThan(arcs.from()[i]);
+                covered += arcs.to()[i] - arcs.from()[i];
+            }
+        }
+        assertThat(covered).isEqualTo(SPACE);
+    }
+
+    @Test
+    void wrapArcIsSplitAtTheTopOfTheSpace() {
+        String wrapOwner = null;
+        long lastPoint = -1;
+        for (String node : ring.nodes()) {
+            HashRing.Arcs arcs = ring.arcsOf(node);
+            for (int i = 0; i < arcs.from().length; i++) {
+                if (arcs.to()[i] == TOP) {
+                    assertThat(wrapOwner).isNull();
+                    wrapOwner = node;
+                    lastPoint = arcs.from()[i];
+                }
+            }
+        }
+        assertThat(wrapOwner).isNotNull();
+
+        // The same node owns the bottom piece (-1, firstPoint]
+        HashRing.Arcs wrapArcs = ring.arcsOf(wrapOwner);
+        boolean hasBottomPiece = false;
+        for (long from : wrapArcs.from()) {
+            hasBottomPiece |= from == -1;
+        }
+        assertThat(hasBottomPiece).isTrue();
+
+        // Hash 0 (user 0) and hashes past the last point land on the first point's owner
+        assertThat(ring.ownerOf(0)).isEqualTo(wrapOwner);
+        int found = 0;
+        for (int userId = 1; found < 20 && userId < 5_000_000; userId++) {
+            if (HashRing.hashUserId(userId) > lastPoint) {
+                assertThat(ring.ownerOf(userId)).isEqualTo(wrapOwner);
+                found++;
+            }
+        }
+        assertThat(found).isEqualTo(20);
+    }
+
+    @Test
+    void ringDoesNotDependOnInputOrderOrDuplicates() {
+        HashRing shuffled = new HashRing(List.of("node-c", "node-a", "node-b", "node-a"), 160);
+
+        assertThat(shuffled.nodes()).containsExactly("node-a", "node-b", "node-c");
+        for (int userId = 1; userId < 10_000; userId++) {
+            assertThat(shuffled.ownerOf(userId)).isEqualTo(ring.ownerOf(userId));
+        }
+    }
+
+    @Test
+    void joiningNodeOnlyTakesKeysForItself() {
+        HashRing grown = new HashRing(List.of("node-a", "node-b", "node-c", "node-d"), 160);
+
+        int moved = 0;
+        for (int userId = 1; userId <= 100_000; userId++) {
+            String before = ring.ownerOf(userId);
+            String after = grown.ownerOf(userId);
+            if (!before.equals(after)) {
+                assertThat(after).isEqualTo("node-d");
+                moved++;
+            }
+        }
+        // Roughly a quarter of the keys should move to the new node
+        assertThat(moved).isBetween(15_000, 35_000);
+    }
+
+    @Test
+    void singleNodeOwnsEverything() {
+        HashRing single = new HashRing(List.of("only"), 4);
+
+        assertThat(single.ownerOf(Integer.MAX_VALUE)).isEqualTo("only");
+        HashRing.Arcs arcs = single.arcsOf("only");
+        long covered = 0;
+        for (int i = 0; i < arcs.from().length; i++) {
+            covered += arcs.to()[i] - arcs.from()[i];
+        }
+        assertThat(covered).isEqualTo(SPACE);
+    }
+
+    @Test
+    void emptyRingAndUnknownNodesOwnNothing() {
+        HashRing empty = new HashRing(List.of(), 160);
+
+        assertThat(empty.isEmpty()).isTrue();
+        assertThat(empty.ownerOf(42)).isNull();
+        assertThat(empty.arcsOf("node-a").from()).isEmpty();
+        assertThat(ring.arcsOf("node-z").from()).isEmpty();
+    }
+
+    @Test
+    void userHashMatchesTheSqlExpression() {
+        // Evaluates USER_HASH_SQL's constants with exact (bigint, overflow-checked) arithmetic
+        Matcher matcher = Pattern.compile("\\* (\\d+)\\) & (\\d+)\\)").matcher(HashRing.USER_HASH_SQL);
+        assertThat(matcher.find()).isTrue();
+        BigInteger multiplier = new BigInteger(matcher.group(1));
+        BigInteger mask = new BigInteger(matcher.group(2));
+        BigInteger bigintMax = BigInteger.valueOf(Long.MAX_VALUE);
+
+        for (int userId : new int[]{0, 1, 2, 65_535, 1_000_000_007, Integer.MAX_VALUE - 1, Integer.MAX_VALUE}) {
+            BigInteger product = BigInteger.valueOf(userId).multiply(multiplier);
+            assertThat(product).as("bigint overflow for %d", userId).isLessThanOrEqualTo(bigintMax);
+            assertThat(HashRing.hashUserId(userId)).as("user %d", userId).isEqualTo(product.and(mask).longValueExact());
+        }
+    }
+
+    private static boolean contains(HashRing.Arcs arcs, long hash) {
+        for (int i = 0; i < arcs.from().length; i++) {
+            if (hash > arcs.from()[i] && hash <= arcs.to()[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
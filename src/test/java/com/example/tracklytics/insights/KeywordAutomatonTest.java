@@ -0,0 +1,108 @@
+package com.example.tracklytics.insights;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordAutomatonTest {
+
+    @Test
+    void matchesKeywordsAnywhereInTheText() {
+        KeywordAutomaton automaton = new KeywordAutomaton(Map.of("rock", 1, "jazz", 2));
+
+        assertThat(automaton.match("rock")).isEqualTo(1);
+        assertThat(automaton.match("indie rock")).isEqualTo(1);
+        assertThat(automaton.match("jazz fusion rock")).isEqualTo(3);
+        assertThat(automaton.match("roc")).isZero();
+        assertThat(automaton.match("")).isZero();
+    }
+
+    @Test
+    void followsFailureLinksIntoShorterKeywords() {
+        // After "abc" the next 'e' breaks "abcd", but "bc" already ended inside it
+        KeywordAutomaton automaton = new KeywordAutomaton(Map.of("abcd", 1, "bc", 2));
+
+        assertThat(automaton.match("abce")).isEqualTo(2);
+        assertThat(automaton.match("abcd")).isEqualTo(3);
+    }
+
+    @Test
+    void restartsFromTheLongestProperSuffix() {
+        KeywordAutomaton automaton = new KeywordAutomaton(Map.of("aab", 1));
+
+        assertThat(automaton.match("aaab")).isEqualTo(1);
+        assertThat(automaton.match("abaab")).isEqualTo(1);
+        assertThat(automaton.match("abab")).isZero();
+    }
+
+    @Test
+    void reportsOverlappingAndNestedKeywords() {
+        Map<String, Integer> keywords = new LinkedHashMap<>();
+        keywords.put("he", 1);
+        keywords.put("she", 2);
+        keywords.put("his", 4);
+        keywords.put("hers", 8);
+        KeywordAutomaton automaton = new KeywordAutomaton(keywords);
+
+        assertThat(automaton.match("ushers")).isEqualTo(1 | 2 | 8);
+        assertThat(automaton.match("this")).isEqualTo(4);
+        assertThat(automaton.match("indie")).isZero();
+    }
+
+    @Test
+    void keywordInsideAnotherKeywordCountsForBoth() {
+        KeywordAutomaton automaton = new KeywordAutomaton(Map.of("indie", 1, "die", 2));
+
+        assertThat(automaton.match("indie pop")).isEqualTo(3);
+        assertThat(automaton.match("die antwoord")).isEqualTo(2);
+    }
+
+    @Test
+    void charactersOutsideTheAlphabetResetTheMatch() {
+        KeywordAutomaton automaton = new KeywordAutomaton(Map.of("rock", 1));
+
+        assertThat(automaton.match("ro\u00e9ck")).isZero();
+        assertThat(automaton.match("rozck")).isZero();
+        assertThat(automaton.match("\uffffrock\u2605")).isEqualTo(1);
+        assertThat(automaton.match("k-pop")).isZero();
+    }
+
+    @Test
+    void emptyKeywordSetMatchesNothing() {
+        KeywordAutomaton automaton = new KeywordAutomaton(Map.of());
+
+        assertThat(automaton.match("anything at all")).isZero();
+    }
+
+    @Test
+    void agreesWithNaiveContainsOnRandomText() {
+        Map<String, Integer> keywords = new LinkedHashMap<>();
+        List<String> words = List.of("ab", "abab", "ba", "bab", "c", "aac", "cab");
+        for (int i = 0; i < words.size(); i++) {
+            keywords.put(words.get(i), 1 << i);
+        }
+        KeywordAutomaton automaton = new KeywordAutomaton(keywords);
+
+        Random random = new Random(42);
+        for (int run = 0; run < 5000; run++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                text.append("abcd".charAt(random.nextInt(4)));
+            }
+
+            int expected = 0;
+            for (Map.Entry<String, Integer> entry : keywords.entrySet()) {
+                if (text.toString().contains(entry.getKey())) {
+                    expected |= entry.getValue();
+                }
+            }
+            assertThat(automaton.match(text.toString())).as(text.toString()).isEqualTo(expected);
+        }
+    }
+}
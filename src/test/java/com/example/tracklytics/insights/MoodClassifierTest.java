@@ -0,0 +1,68 @@
+package com.example.tracklytics.insights;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MoodClassifierTest {
+
+    private final GenreDictionary genres = GenreDictionary.global();
+
+    private final MoodClassifier classifier = new MoodClassifier(
+            List.of("rock", "punk", "metal", "dance", "electronic"),
+            List.of("ambient", "jazz", "acoustic", "folk"),
+            List.of("indie", "alternative", "singer-songwriter", "blues"));
+
+    @Test
+    void classifiesBySubstringLikeTheOriginalContainsChecks() {
+        assertThat(classifier.moodFlags(genres.intern("Post-Punk"))).isEqualTo(GenreMood.ENERGETIC);
+        assertThat(classifier.moodFlags(genres.intern("dark ambient"))).isEqualTo(GenreMood.CHILL);
+        assertThat(classifier.moodFlags(genres.intern("singer-songwriter"))).isEqualTo(GenreMood.EMOTIONAL);
+        assertThat(classifier.moodFlags(genres.intern("k-pop"))).isZero();
+    }
+
+    @Test
+    void genreCanFallIntoSeveralMoods() {
+        assertThat(classifier.moodFlags(genres.intern("indie folk rock")))
+                .isEqualTo(GenreMood.ENERGETIC | GenreMood.CHILL | GenreMood.EMOTIONAL);
+        assertThat(classifier.moodFlags(genres.intern("acoustic blues")))
+                .isEqualTo(GenreMood.CHILL | GenreMood.EMOTIONAL);
+    }
+
+    @Test
+    void keywordsAreNormalizedAndMergedAcrossMoods() {
+        MoodClassifier configured = new MoodClassifier(List.of(" Rock "), List.of("ROCK", ""), List.of());
+
+        assertThat(configured.moodFlags(genres.intern("garage rock")))
+                .isEqualTo(GenreMood.ENERGETIC | GenreMood.CHILL);
+        assertThat(configured.moodFlags(genres.intern("jazz"))).isZero();
+    }
+
+    @Test
+    void memoizedResultIsStableAcrossCalls() {
+        int rock = genres.intern("rock");
+        int unclassified = genres.intern("vaporwave");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(classifier.moodFlags(rock)).isEqualTo(GenreMood.ENERGETIC);
+            // 0 flags must be memoized as "classified", not confused with an empty slot
+            assertThat(classifier.moodFlags(unclassified)).isZero();
+        }
+    }
+
+    @Test
+    void memoGrowsPastItsInitialSize() {
+        int last = 0;
+        for (int i = 0; i < 600; i++) {
+            last = genres.intern("memo growth test " + i + (i % 2 == 0 ? " jazz" : ""));
+        }
+        int early = genres.intern("memo growth test 0 jazz");
+
+        assertThat(last).isGreaterThanOrEqualTo(256);
+        assertThat(classifier.moodFlags(last)).isZero();
+        assertThat(classifier.moodFlags(early)).isEqualTo(GenreMood.CHILL);
+        assertThat(classifier.moodFlags(last)).isZero();
+    }
+}
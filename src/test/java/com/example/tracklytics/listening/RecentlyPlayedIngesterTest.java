@@ -0,0 +1,241 @@
+package com.example.tracklytics.listening;
+
+import com.example.tracklytics.cluster.ClusterMembership;
+import com.example.tracklytics.spotify.SpotifyClient;
+import com.example.tracklytics.spotify.SpotifyResponseDecoder;
+import com.example.tracklytics.track.Track;
+import com.example.tracklytics.track.TrackService;
+import com.example.tracklytics.user.RecentlyPlayedCursor;
+import com.example.tracklytics.user.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RecentlyPlayedIngesterTest {
+
+    private static final String URL = "https://api.spotify.com/v1/me/player/recently-played?limit=50";
+
+    private final SpotifyClient spotifyClient = mock(SpotifyClient.class);
+    private final TrackService trackService = mock(TrackService.class);
+    private final UserService userService = mock(UserService.class);
+    private final ListeningEventStore listeningEventStore = mock(ListeningEventStore.class);
+    private final ClusterMembership clusterMembership = mock(ClusterMembership.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Instant now = Instant.now();
+
+    @BeforeEach
+    void stubCatalog() {
+        when(clusterMembership.owns(anyInt())).thenReturn(true);
+        when(trackService.findIdsBySpotifyId(any())).thenReturn(Map.of());
+        when(trackService.upsertAllBySpotifyId(any())).thenAnswer(invocation -> {
+            Map<String, Integer> ids = new HashMap<>();
+            for (Track track : invocation.<Collection<Track>>getArgument(0)) {
+                ids.put(track.getSpotifyId(), Math.abs(track.getSpotifyId().hashCode()));
+            }
+            return ids;
+        });
+    }
+
+    @Test
+    void cursorAdvancesToTheNewestPlayWhenSpotifysCursorLagsBehind() {
+        long stored = now.minus(Duration.ofHours(1)).toEpochMilli();
+        Instant newest = now.minusSeconds(60);
+        respond(page(2, newest, newest.minusSeconds(600).toEpochMilli()));
+
+        users(user(1, stored));
+        ingester(4, 8).pollAll();
+
+        verify(spotifyClient).get(URL + "&after=" + stored, "access-1");
+        verify(userService).advanceRecentlyPlayedCursor(1, newest.toEpochMilli());
+    }
+
+    @Test
+    void cursorAdvancesToSpotifysCursorWhenItIsAhead() {
+        Instant newest = now.minusSeconds(60);
+        long cursor = now.toEpochMilli();
+        respond(page(2, newest, cursor));
+
+        users(user(1, null));
+        ingester(4, 8).pollAll();
+
+        verify(spotifyClient).get(URL, "access-1");
+        verify(userService).advanceRecentlyPlayedCursor(1, cursor);
+    }
+
+    @Test
+    void cursorNeverMovesBackwards() {
+        // Plays older than the stored cursor and no cursor in the response
+        long stored = now.minusSeconds(60).toEpochMilli();
+        respond(page(2, now.minusSeconds(600), null));
+
+        users(user(1, stored));
+        ingester(4, 8).pollAll();
+
+        verify(userService).advanceRecentlyPlayedCursor(1, stored);
+    }
+
+    @Test
+    void shortPageEndsThePoll() {
+        respond(page(49, now.minusSeconds(60), null), page(50, now, null));
+
+        users(user(1, null));
+        ingester(4, 8).pollAll();
+
+        verify(spotifyClient, times(1)).get(anyString(), anyString());
+        verify(listeningEventStore, times(1)).append(any());
+        assertThat(polls("ingested")).isEqualTo(1);
+        assertThat(meterRegistry.get("tracklytics.listening.events").counter().count()).isEqualTo(49);
+    }
+
+    @Test
+    void emptyPageEndsThePollWithoutWrites() {
+        respond(fixture("recently-played-empty.json"));
+
+        users(user(1, null));
+        ingester(4, 8).pollAll();
+
+        verifyNoInteractions(listeningEventStore, trackService);
+        verify(userService, never()).advanceRecentlyPlayedCursor(anyInt(), anyLong());
+        assertThat(polls("empty")).isEqualTo(1);
+    }
+
+    @Test
+    void fullPagesArePolledUpToMaxPages() {
+        Instant first = now.minus(Duration.ofHours(3));
+        respond(page(50, first, null), page(50, first.plus(Duration.ofHours(1)), null),
+                page(50, first.plus(Duration.ofHours(2)), null), page(50, now, null));
+
+        users(user(1, null));
+        ingester(3, 8).pollAll();
+
+        // Each page is requested from the cursor the previous one left behind
+        ArgumentCaptor<String> urls = ArgumentCaptor.forClass(String.class);
+        verify(spotifyClient, times(3)).get(urls.capture(), eq("access-1"));
+        assertThat(urls.getAllValues()).containsExactly(URL,
+                URL + "&after=" + first.toEpochMilli(),
+                URL + "&after=" + first.plus(Duration.ofHours(1)).toEpochMilli());
+        verify(listeningEventStore, times(3)).append(any());
+        assertThat(meterRegistry.get("tracklytics.listening.events").counter().count()).isEqualTo(150);
+    }
+
+    @Test
+    void knownTracksAreLookedUpAndOnlyUnknownOnesUpserted() {
+        respond(fixture("recently-played.json"));
+        // Copied on the way in: the ingester reuses the set afterwards
+        List<Set<String>> lookups = new ArrayList<>();
+        when(trackService.findIdsBySpotifyId(any())).thenAnswer(invocation -> {
+            lookups.add(Set.copyOf(invocation.<Collection<String>>getArgument(0)));
+            return Map.of("1bSpwPhAxZwlR2enJJsv7U", 7);
+        });
+
+        users(user(1, null));
+        ingester(4, 8).pollAll();
+
+        assertThat(lookups).containsExactly(Set.of("1bSpwPhAxZwlR2enJJsv7U", "6b2oQwSGFkzsMtQruIWm2p"));
+        verify(trackService).upsertAllBySpotifyId(argThat(tracks ->
+                tracks.stream().map(Track::getSpotifyId).toList().equals(List.of("6b2oQwSGFkzsMtQruIWm2p"))));
+        verify(listeningEventStore).append(List.of(
+                new ListeningEvent(1, 7, Instant.parse("2026-10-17T21:04:55.123Z"), "playlist"),
+                new ListeningEvent(1, Math.abs("6b2oQwSGFkzsMtQruIWm2p".hashCode()), Instant.parse("2026-10-17T20:58:01Z"), null)));
+    }
+
+    @Test
+    void idleUsersArePolledOnceEveryFewPassesStaggeredById() {
+        long idle = now.minus(Duration.ofHours(48)).toEpochMilli();
+        long active = now.minus(Duration.ofHours(1)).toEpochMilli();
+        List<RecentlyPlayedCursor> cursors = List.of(user(1, idle), user(2, idle), user(3, idle), user(4, idle),
+                user(5, active), new RecentlyPlayedCursor(6, "user-6", "access-6", now.minusSeconds(1), active));
+        when(userService.recentlyPlayedCursorPages()).thenReturn(List.of(cursors));
+        respond(fixture("recently-played-empty.json"));
+        RecentlyPlayedIngester ingester = ingester(4, 4);
+
+        // Pass p polls the idle user with (p + id) % 4 == 0, so each idle user exactly once over four passes
+        for (int pass = 0; pass < 4; pass++) {
+            ingester.pollAll();
+
+            int idleDue = 4 - pass;
+            for (int id = 1; id <= 4; id++) {
+                verify(spotifyClient, times(id == idleDue ? 1 : 0)).get(anyString(), eq("access-" + id));
+            }
+            verify(spotifyClient).get(anyString(), eq("access-5"));
+            verify(spotifyClient, never()).get(anyString(), eq("access-6"));
+            clearInvocations(spotifyClient);
+        }
+        // 3 idle users and the expired token, on each of the four passes
+        assertThat(polls("skipped")).isEqualTo(16);
+    }
+
+    private RecentlyPlayedIngester ingester(int maxPages, int idlePollEvery) {
+        // Pacing well out of the way: a thousand poll starts a second
+        return new RecentlyPlayedIngester(spotifyClient, new SpotifyResponseDecoder(new ObjectMapper()), trackService,
+                userService, listeningEventStore, clusterMembership, 8, maxPages, 1000, 24, idlePollEvery, meterRegistry);
+    }
+
+    private RecentlyPlayedCursor user(int id, Long after) {
+        return new RecentlyPlayedCursor(id, "user-" + id, "access-" + id, now.plusSeconds(3600), after);
+    }
+
+    private void users(RecentlyPlayedCursor... cursors) {
+        when(userService.recentlyPlayedCursorPages()).thenReturn(List.of(List.of(cursors)));
+    }
+
+    private void respond(byte[] first, byte[]... rest) {
+        var stubbing = when(spotifyClient.get(anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(first));
+        for (byte[] body : rest) {
+            stubbing = stubbing.thenReturn(CompletableFuture.completedFuture(body));
+        }
+    }
+
+    private double polls(String outcome) {
+        return meterRegistry.get("tracklytics.listening.polls").tag("outcome", outcome).counter().count();
+    }
+
+    // A recently-played page of distinct tracks played a minute apart, newest first
+    private static byte[] page(int plays, Instant newest, Long cursor) {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < plays; i++) {
+            json.append(i > 0 ? "," : "")
+                    .append("{\"track\":{\"id\":\"track-").append(newest.toEpochMilli()).append('-').append(i)
+                    .append("\",\"name\":\"Track ").append(i).append("\"},\"played_at\":\"")
+                    .append(newest.minusSeconds(60L * i)).append("\"}");
+        }
+        json.append("]");
+        if (cursor != null) {
+            json.append(",\"cursors\":{\"after\":\"").append(cursor).append("\"}");
+        }
+        return json.append("}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] fixture(String name) {
+        try (InputStream in = RecentlyPlayedIngesterTest.class.getResourceAsStream("/spotify/" + name)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
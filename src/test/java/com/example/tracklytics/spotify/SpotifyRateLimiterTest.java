@@ -0,0 +1,62 @@
+package com.example.tracklytics.spotify;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpotifyRateLimiterTest {
+
+    private final SpotifyRateLimiter limiter = new SpotifyRateLimiter(10, 2, 500, 30000, new SimpleMeterRegistry());
+
+    @Test
+    void waitingCallersAreHandedSuccessiveSlots() {
+        assertThat(limiter.reserve()).isZero();
+        assertThat(limiter.reserve()).isZero();
+
+        Duration third = limiter.reserve();
+        Duration fourth = limiter.reserve();
+        Duration fifth = limiter.reserve();
+
+        assertThat(third).isBetween(Duration.ofMillis(50), Duration.ofMillis(100));
+        assertThat(fourth.minus(third)).isBetween(Duration.ofMillis(90), Duration.ofMillis(110));
+        assertThat(fifth.minus(fourth)).isBetween(Duration.ofMillis(90), Duration.ofMillis(110));
+        assertThat(limiter.getAvailablePermits()).isNegative();
+    }
+
+    @Test
+    void retryAfterPausesNewReservations() {
+        limiter.onRateLimited(Duration.ofSeconds(2));
+
+        assertThat(limiter.isPaused()).isTrue();
+        assertThat(limiter.reserve()).isBetween(Duration.ofMillis(1900), Duration.ofMillis(2100));
+        assertThat(limiter.reserve()).isBetween(Duration.ofMillis(2000), Duration.ofMillis(2200));
+    }
+
+    @Test
+    void retryAfterKeepsSlotsAlreadyHandedOut() {
+        Duration lastSlot = Duration.ZERO;
+        for (int i = 0; i < 22; i++) {
+            lastSlot = limiter.reserve();
+        }
+        // 20 callers are queued behind the burst, the last one about 2s out
+        assertThat(lastSlot).isBetween(Duration.ofMillis(1900), Duration.ofMillis(2000));
+
+        limiter.onRateLimited(Duration.ofMillis(500));
+
+        // Past the pause and past every earlier slot, not a fresh bucket that refills at the end of the pause
+        Duration next = limiter.reserve();
+        assertThat(next).isGreaterThan(lastSlot);
+        assertThat(next).isBetween(Duration.ofMillis(2500), Duration.ofMillis(2700));
+    }
+
+    @Test
+    void parsesRetryAfterSecondsAndFallsBackOnGarbage() {
+        assertThat(SpotifyRateLimiter.parseRetryAfter("3")).isEqualTo(Duration.ofSeconds(3));
+        assertThat(SpotifyRateLimiter.parseRetryAfter("-3")).isZero();
+        assertThat(SpotifyRateLimiter.parseRetryAfter("soon")).isEqualTo(Duration.ofSeconds(1));
+        assertThat(SpotifyRateLimiter.parseRetryAfter(null)).isEqualTo(Duration.ofSeconds(1));
+    }
+}
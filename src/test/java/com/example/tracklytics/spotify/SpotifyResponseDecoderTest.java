@@ -0,0 +1,97 @@
+package com.example.tracklytics.spotify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpotifyResponseDecoderTest {
+
+    private final SpotifyResponseDecoder decoder = new SpotifyResponseDecoder(new ObjectMapper());
+
+    @Test
+    void decodesTopTracksAndSkipsUnknownFields() {
+        List<SpotifyTrack> tracks = decoder.decodeTopTracks(fixture("top-tracks.json"));
+
+        assertThat(tracks).containsExactly(
+                new SpotifyTrack("5RVuBrXVLptAEbGJdSDzL5", "The Funeral", "Everything All the Time", 323000, 71),
+                new SpotifyTrack("2TpxZ7JUBn3uw46aR7qd6V", "All I Want", null, null, null));
+    }
+
+    @Test
+    void decodesTopArtistsWithMissingOrMixedGenres() {
+        List<SpotifyArtist> artists = decoder.decodeTopArtists(fixture("top-artists.json"));
+
+        assertThat(artists).containsExactly(
+                new SpotifyArtist("4Z8W4fKeB5YxbusRsdQVPb", "Radiohead", 79,
+                        List.of("alternative rock", "art rock", "permanent wave")),
+                new SpotifyArtist("3AA28KZvwAUcZuOKwyblJQ", "Gorillaz", null, null));
+    }
+
+    @Test
+    void returnsNullWithoutItemsArray() {
+        assertThat(decoder.decodeTopTracks(utf8("{\"error\":{\"status\":502},\"items\":null}"))).isNull();
+    }
+
+    @Test
+    void rejectsNonObjectBody() {
+        assertThatThrownBy(() -> decoder.decodeTopArtists(utf8("[]"))).isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    void decodesRecentlyPlayedWithContextsAndCursor() {
+        SpotifyRecentlyPlayed page = decoder.decodeRecentlyPlayed(fixture("recently-played.json"));
+
+        // Local files (null id) and items without played_at are dropped
+        assertThat(page.items()).containsExactly(
+                new SpotifyPlay(new SpotifyTrack("1bSpwPhAxZwlR2enJJsv7U", "Nude", "In Rainbows", 238000, 65),
+                        Instant.parse("2026-10-17T21:04:55.123Z"), "playlist"),
+                new SpotifyPlay(new SpotifyTrack("6b2oQwSGFkzsMtQruIWm2p", "Creep", null, 201000, 88),
+                        Instant.parse("2026-10-17T20:58:01Z"), null));
+        assertThat(page.afterCursor()).isEqualTo(1760735095123L);
+    }
+
+    @Test
+    void emptyRecentlyPlayedPageHasNoCursor() {
+        SpotifyRecentlyPlayed page = decoder.decodeRecentlyPlayed(fixture("recently-played-empty.json"));
+
+        assertThat(page.items()).isEmpty();
+        assertThat(page.afterCursor()).isNull();
+    }
+
+    @Test
+    void blankAfterCursorIsIgnored() {
+        SpotifyRecentlyPlayed page = decoder.decodeRecentlyPlayed(utf8("{\"items\":[],\"cursors\":{\"after\":\"\"}}"));
+
+        assertThat(page.afterCursor()).isNull();
+    }
+
+    @Test
+    void decodesAudioFeatures() {
+        SpotifyAudioFeatures features = decoder.decodeAudioFeatures(utf8("""
+                {"danceability":0.5,"energy":0.8,"key":7,"id":"abc","valence":null,"tempo":120,"analysis_url":"x"}
+                """));
+
+        assertThat(features).isEqualTo(new SpotifyAudioFeatures("abc", 0.5, 0.8, null, null, 120.0));
+    }
+
+    private static byte[] fixture(String name) {
+        try (InputStream in = SpotifyResponseDecoderTest.class.getResourceAsStream("/spotify/" + name)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.tracklytics.track;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class TrackUpsertRepositoryImplTest {
+
+    private final FakeTracksTable table = new FakeTracksTable();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TrackUpsertRepositoryImpl repository = new TrackUpsertRepositoryImpl(table, meterRegistry);
+
+    @Test
+    void insertsNewRowsWithIdsFromOnePooledBlock() {
+        Map<String, Integer> ids = repository.upsertAll(List.of(track("c", 10), track("a", 10), track("b", 10)));
+
+        assertThat(ids).containsExactlyInAnyOrderEntriesOf(Map.of("a", 1, "b", 2, "c", 3));
+        assertThat(table.blocksDrawn).isEqualTo(1);
+        assertThat(writes("inserted")).isEqualTo(3);
+    }
+
+    @Test
+    void unchangedRowsAreSkippedWithoutWritesOrIds() {
+        repository.upsertAll(List.of(track("a", 10), track("b", 10)));
+        table.inserts.clear();
+
+        Map<String, Integer> ids = repository.upsertAll(List.of(track("b", 10), track("a", 10)));
+
+        assertThat(ids).containsExactlyInAnyOrderEntriesOf(Map.of("a", 1, "b", 2));
+        assertThat(table.inserts).isEmpty();
+        assertThat(table.blocksDrawn).isEqualTo(1);
+        assertThat(writes("unchanged")).isEqualTo(2);
+    }
+
+    @Test
+    void changedRowsAreUpdatedUnderTheirStoredId() {
+        repository.upsertAll(List.of(track("a", 10), track("b", 10)));
+        table.inserts.clear();
+
+        Map<String, Integer> ids = repository.upsertAll(List.of(track("a", 10), track("b", 11)));
+
+        assertThat(ids).containsExactlyInAnyOrderEntriesOf(Map.of("a", 1, "b", 2));
+        assertThat(table.inserts).containsExactly(List.of("b"));
+        assertThat(table.blocksDrawn).isEqualTo(1);
+        assertThat(table.rows.get("b").popularity).isEqualTo(11);
+        assertThat(writes("inserted")).isEqualTo(2);
+        assertThat(writes("updated")).isEqualTo(1);
+        assertThat(writes("unchanged")).isEqualTo(1);
+    }
+
+    @Test
+    void mixedBatchDrawsABlockOnlyForItsNewRows() {
+        repository.upsertAll(List.of(track("a", 10)));
+
+        Map<String, Integer> ids = repository.upsertAll(List.of(track("a", 10), track("b", 10), track("c", 20)));
+
+        assertThat(ids).containsExactlyInAnyOrderEntriesOf(Map.of("a", 1, "b", 51, "c", 52));
+        assertThat(table.blocksDrawn).isEqualTo(2);
+    }
+
+    @Test
+    void rowWrittenConcurrentlyAfterLookupIsResolvedByTheFallback() {
+        repository.upsertAll(List.of(track("a", 10)));
+        // Another sync stores the same content between our lookup and our insert
+        table.beforeInsert = () -> table.rows.get("a").fingerprint = track("a", 11).computeFingerprint();
+
+        Map<String, Integer> ids = repository.upsertAll(List.of(track("a", 11)));
+
+        assertThat(ids).containsExactlyEntriesOf(Map.of("a", 1));
+        assertThat(writes("updated")).isZero();
+        assertThat(writes("unchanged")).isEqualTo(1);
+    }
+
+    @Test
+    void splitsLargeInputsIntoSortedBatches() {
+        List<Track> tracks = IntStream.range(0, 120).mapToObj(i -> track("t%03d".formatted(119 - i), i)).toList();
+
+        Map<String, Integer> ids = repository.upsertAll(tracks);
+
+        assertThat(ids).hasSize(120);
+        assertThat(new HashSet<>(ids.values())).hasSize(120);
+        assertThat(table.blocksDrawn).isEqualTo(3);
+        assertThat(table.inserts).extracting(List::size).containsExactly(50, 50, 20);
+        assertThat(table.inserts.get(0)).isSorted();
+        assertThat(table.inserts.get(0).get(0)).isEqualTo("t000");
+    }
+
+    @Test
+    void duplicateSpotifyIdsAreWrittenOnce() {
+        Map<String, Integer> ids = repository.upsertAll(List.of(track("a", 10), track("a", 12)));
+
+        assertThat(ids).containsOnlyKeys("a");
+        assertThat(table.inserts).containsExactly(List.of("a"));
+        assertThat(table.rows.get("a").popularity).isEqualTo(12);
+    }
+
+    @Test
+    void emptyInputTouchesNothing() {
+        assertThat(repository.upsertAll(List.of())).isEmpty();
+        assertThat(table.statements).isZero();
+    }
+
+    private double writes(String outcome) {
+        return meterRegistry.get("tracklytics.catalog.writes").tag("entity", "track").tag("outcome", outcome)
+                .counter().count();
+    }
+
+    private static Track track(String spotifyId, int popularity) {
+        Track track = new Track(spotifyId, "Name " + spotifyId, "Album");
+        track.setDurationMs(200000);
+        track.setPopularity(popularity);
+        return track;
+    }
+
+    // Answers the upsert's statements from an in-memory tracks table with Postgres' ON CONFLICT semantics
+    private static class FakeTracksTable extends JdbcTemplate {
+
+        static class Row {
+            int id;
+            Integer popularity;
+            Long fingerprint;
+        }
+
+        final Map<String, Row> rows = new HashMap<>();
+        final List<List<String>> inserts = new ArrayList<>();
+        Runnable beforeInsert = () -> {};
+        int blocksDrawn;
+        int statements;
+        private long sequence;
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            statements++;
+            assertThat(sql).contains("nextval('tracks_seq')");
+            blocksDrawn++;
+            sequence += Track.ID_ALLOCATION_SIZE;
+            return requiredType.cast(sequence);
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler handler, Object... args) {
+            statements++;
+            try {
+                if (sql.startsWith("INSERT")) {
+                    insert(handler, args);
+                } else {
+                    for (String spotifyId : (String[]) args[0]) {
+                        Row row = rows.get(spotifyId);
+                        if (row != null) {
+                            handler.processRow(resultRow(Map.of("id", row.id, "spotify_id", spotifyId),
+                                    row.fingerprint));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void insert(RowCallbackHandler handler, Object[] args) throws SQLException {
+            beforeInsert.run();
+            List<String> spotifyIds = new ArrayList<>();
+            for (int i = 0; i < args.length; i += 7) {
+                String spotifyId = (String) args[i + 1];
+                long fingerprint = (Long) args[i + 6];
+                spotifyIds.add(spotifyId);
+
+                Row row = rows.get(spotifyId);
+                boolean inserted = row == null;
+                if (inserted) {
+                    row = new Row();
+                    row.id = (Integer) args[i];
+                    rows.put(spotifyId, row);
+                } else if (Objects.equals(row.fingerprint, fingerprint)) {
+                    continue;
+                }
+                row.popularity = (Integer) args[i + 5];
+                row.fingerprint = fingerprint;
+                handler.processRow(resultRow(Map.of("id", row.id, "spotify_id", spotifyId, "inserted", inserted), null));
+            }
+            inserts.add(spotifyIds);
+        }
+
+        private static ResultSet resultRow(Map<String, Object> columns, Long fingerprint) {
+            Map<String, Object> values = new HashMap<>(columns);
+            values.put("fingerprint", fingerprint);
+            Object[] last = new Object[1];
+            return mock(ResultSet.class, invocation -> {
+                String method = invocation.getMethod().getName();
+                if (method.equals("wasNull")) {
+                    return last[0] == null;
+                }
+                Object value = values.get(invocation.<String>getArgument(0));
+                last[0] = value;
+                return switch (method) {
+                    case "getInt" -> value == null ? 0 : ((Number) value).intValue();
+                    case "getLong" -> value == null ? 0L : ((Number) value).longValue();
+                    case "getBoolean" -> Boolean.TRUE.equals(value);
+                    default -> value;
+                };
+            });
+        }
+    }
+}